@@ -1,18 +1,60 @@
 package Controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.javalin.Javalin;
+import io.javalin.compression.Brotli;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import io.javalin.json.JavalinJackson;
 
+import DAO.AccountDAO;
+import DAO.MessageDAO;
 // Import Models 
 import Model.Account;
 import Model.Message;
+import Model.TagCount;
+import Service.AccountIndex;
 import Service.AccountService;
 import Service.MessageService;
+import Service.SessionStore;
+import Service.TagService;
+import Service.TimelineService;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.DbExecutor;
+import Util.ETags;
+import Util.JsonUtil;
+import Util.Metrics;
+import Util.RateLimiter;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -20,17 +62,57 @@ import Service.MessageService;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+    private static final Logger LOG = LoggerFactory.getLogger(SocialMediaController.class);
+
+    // Page sizes for GET /messages?after=&limit=
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // Deepest result reachable with GET /messages/search?offset=, each search ranks offset + limit matches
+    private static final int MAX_SEARCH_DEPTH = 10_000;
+    // Trending tags returned when ?limit= is not given.
+    private static final int DEFAULT_TRENDING_SIZE = 10;
+    private static final String BEARER = "Bearer ";
+    // Largest accepted POST /messages/batch
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("socialmedia.batch.maxSize", 1000);
+    // Most Jetty threads in platform mode, same as Javalin's default pool
+    private static final int SERVER_MAX_THREADS = Integer.getInteger("socialmedia.server.maxThreads", 250);
+
     // Servcie Objects
     AccountService accService;
     MessageService msService;
+    TimelineService timelineService;
+    TagService tagService;
+    SessionStore sessions;
+
+    /**
+     * Buckets of POST /messages, also charged one token per message by POST /messages/batch.
+     * Null unless -Dsocialmedia.rateLimit.enabled=true.
+     */
+    private RateLimiter messageLimiter;
+
+    /**
+     * When true, creating, updating and deleting messages needs the session token from POST /login, and only
+     * works on the caller's own messages. Off unless -Dsocialmedia.auth.required=true.
+     */
+    private final boolean authRequired;
 
     /**
      * Constructor for social media controller.
      * Will initalize service objects.
      */
     public SocialMediaController(){
-        this.accService = new AccountService();
-        this.msService = new MessageService();
+        // Both services share one account index, so accounts registered through one are seen by the other.
+        AccountIndex accounts = new AccountIndex(new AccountDAO());
+        if (Boolean.getBoolean("socialmedia.accounts.warm")) {
+            accounts.warm();
+        }
+        this.accService = new AccountService(accounts);
+        this.timelineService = new TimelineService(accounts, DbExecutor.getShared());
+        this.tagService = new TagService(accounts, DbExecutor.getShared());
+        this.sessions = new SessionStore();
+        this.authRequired = Boolean.getBoolean("socialmedia.auth.required");
+        this.msService = new MessageService(new MessageDAO(), accounts, DbExecutor.getShared(), timelineService,
+                tagService);
     }
 
     /**
@@ -39,15 +121,29 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        CompressionStrategy compression = compressionStrategy();
+        Javalin app = Javalin.create(config -> {
+            // Javalin shares our pre-configured mapper instead of building its own.
+            config.jsonMapper(new JavalinJackson(JsonUtil.MAPPER));
+            config.jetty.server(SocialMediaController::createServer);
+            config.compression.custom(compression);
+            // Runs after every request, including async ones once their future completes.
+            config.requestLogger.http(SocialMediaController::recordRequest);
+        });
         // Registration
         app.post("/register", this::registerHandler);
         // Login
         app.post("/login", this::loginHandler);
+        // End the session of a token from /login
+        app.post("/logout", this::logoutHandler);
         // Create new message
         app.post("/messages", this::createMessagesHandler);
+        // Create many messages at once
+        app.post("/messages/batch", this::createMessagesBatchHandler);
         // Get all messages
         app.get("/messages", this::getAllMessagesHandler);
+        // Search message text, best match first. Registered before /messages/{message_id} so it isn't taken for an id.
+        app.get("/messages/search", this::searchMessagesHandler);
         // Get one message by message ID
         app.get("/messages/{message_id}", this::getOneMessageHandler);
         // Delete one message by message ID
@@ -56,12 +152,157 @@ public class SocialMediaController {
         app.patch("/messages/{message_id}", this::patchMessageHandler);
         // Get all message by account ID
         app.get("/accounts/{account_id}/messages", this::getAllMessagesFromAccountHandler);
+        // Get an account's messages newest first, one page at a time
+        app.get("/accounts/{account_id}/feed", this::getFeedHandler);
+        // Follow and unfollow an account
+        app.put("/accounts/{account_id}/following/{followee_id}", this::followHandler);
+        app.delete("/accounts/{account_id}/following/{followee_id}", this::unfollowHandler);
+        // Who an account follows, and who follows it
+        app.get("/accounts/{account_id}/following", this::getFolloweesHandler);
+        app.get("/accounts/{account_id}/followers", this::getFollowersHandler);
+        // Messages of the accounts an account follows, newest first, one page at a time
+        app.get("/accounts/{account_id}/home", this::getHomeHandler);
+        // Messages that mention an account, newest first, one page at a time
+        app.get("/accounts/{account_id}/mentions", this::getMentionsHandler);
+        // Messages with a #tag, newest first, one page at a time
+        app.get("/tags/{tag}/messages", this::getTagMessagesHandler);
+        // Most used tags of the last hour
+        app.get("/tags/trending", this::getTrendingTagsHandler);
+        // Metrics for scraping
+        app.get("/metrics", this::metricsHandler);
+
+        // Throttle the write endpoints, per remote address or, for messages, per logged in account.
+        if (Boolean.getBoolean("socialmedia.rateLimit.enabled")) {
+            rateLimit(app, rateLimiter("register", 1, 5), SocialMediaController::remoteAddress, "/register");
+            rateLimit(app, rateLimiter("login", 5, 10), SocialMediaController::remoteAddress, "/login");
+            // The batch handler charges its messages itself, once it knows how many there are.
+            messageLimiter = rateLimiter("messages", 20, 50);
+            rateLimit(app, messageLimiter, this::accountOrRemoteAddress, "/messages");
+        }
+        // A rate limit was hit, tell the client when a request would be let through.
+        app.exception(RateLimiter.LimitedException.class, (e, ctx) -> {
+            ctx.header("Retry-After", Long.toString(e.getRetryAfterSeconds()));
+            ctx.status(429);
+        });
+
+        // A cache must not hand a compressed response to a client that didn't ask for one.
+        if (compression != CompressionStrategy.NONE) {
+            app.before(ctx -> ctx.header("Vary", "Accept-Encoding"));
+        }
+
+        // The database executor is full, ask the client to come back instead of queueing without limit.
+        app.exception(RejectedExecutionException.class, (e, ctx) -> {
+            ctx.header("Retry-After", "1");
+            ctx.status(503);
+        });
+
+        // Stop background work in the services with the server.
+        app.events(event -> event.serverStopped(() -> {
+            msService.close();
+            sessions.close();
+        }));
 
         // app.get("example-endpoint", this::exampleHandler);
 
         return app;
     }
 
+    /**
+     * Builds the Jetty server, with request threads picked by -Dsocialmedia.server.threads:
+     * "platform" (default) runs handlers on a pool of at most SERVER_MAX_THREADS threads, so a request
+     * waiting on the database holds one of them. "virtual" runs every request on its own virtual thread
+     * (Java 21+), the acceptor and selector threads stay on the pool. There is then no thread limit. Either
+     * way, database work waits in the DbExecutor's bounded queue, and a request that finds it full gets 503.
+     *
+     * Connectors also speak HTTP/2 over plain text (h2c), both with prior knowledge and as an upgrade from
+     * HTTP/1.1, unless -Dsocialmedia.server.h2c=false. HTTP/1.1 clients see no difference.
+     * @return a Jetty server without connectors, Javalin adds its own.
+     */
+    private static Server createServer() {
+        QueuedThreadPool threadPool = new QueuedThreadPool(SERVER_MAX_THREADS, 8, 60_000);
+        threadPool.setName("JettyServerThreadPool");
+        if ("virtual".equals(System.getProperty("socialmedia.server.threads", "platform"))) {
+            if (VirtualThreads.areSupported()) {
+                threadPool.setUseVirtualThreads(true);
+            } else {
+                LOG.warn("Virtual threads need Java 21 or later, using platform threads.");
+            }
+        }
+        Server server = new Server(threadPool);
+        if (Boolean.parseBoolean(System.getProperty("socialmedia.server.h2c", "true"))) {
+            // Javalin adds its connector right before starting the server, so h2c is added to it then.
+            server.addEventListener(new LifeCycle.Listener() {
+                @Override
+                public void lifeCycleStarting(LifeCycle event) {
+                    for (Connector connector : server.getConnectors()) {
+                        enableH2c(connector);
+                    }
+                }
+            });
+        }
+        return server;
+    }
+
+    /**
+     * Adds h2c to an HTTP/1.1 connector, sharing its HTTP configuration.
+     * @param connector
+     */
+    private static void enableH2c(Connector connector) {
+        HttpConnectionFactory http = connector.getConnectionFactory(HttpConnectionFactory.class);
+        if (connector instanceof ServerConnector && http != null
+                && connector.getConnectionFactory(HTTP2CServerConnectionFactory.class) == null) {
+            ((ServerConnector) connector).addConnectionFactory(
+                    new HTTP2CServerConnectionFactory(http.getHttpConfiguration()));
+        }
+    }
+
+    /**
+     * Response compression, picked by -Dsocialmedia.compression: "gzip" (default), "brotli", "both" (brotli
+     * for clients that accept it, gzip for the rest) or "none". Brotli needs the jvm-brotli native library,
+     * without it Javalin logs a warning and leaves brotli out.
+     *
+     * A response is compressed when its first write is at least -Dsocialmedia.compression.minSize bytes
+     * (1500 by default, about one packet, below that compression saves nothing on the wire). JSON is written
+     * in 8 KB chunks, so a larger threshold only holds back small responses. The levels are
+     * -Dsocialmedia.compression.gzipLevel (6) and -Dsocialmedia.compression.brotliLevel (4).
+     * @return the strategy for Javalin's config.
+     */
+    private static CompressionStrategy compressionStrategy() {
+        Brotli brotli = new Brotli(Integer.getInteger("socialmedia.compression.brotliLevel", 4));
+        Gzip gzip = new Gzip(Integer.getInteger("socialmedia.compression.gzipLevel", 6));
+        CompressionStrategy strategy;
+        switch (System.getProperty("socialmedia.compression", "gzip")) {
+            case "none":
+                return CompressionStrategy.NONE;
+            case "brotli":
+                strategy = new CompressionStrategy(brotli, null);
+                break;
+            case "both":
+                strategy = new CompressionStrategy(brotli, gzip);
+                break;
+            default:
+                strategy = new CompressionStrategy(null, gzip);
+        }
+        strategy.setMinSizeForCompression(Integer.getInteger("socialmedia.compression.minSize", 1500));
+        return strategy;
+    }
+
+    /**
+     * Records the request's latency in http_server_requests_seconds, by method, route and status.
+     * The route is the path pattern, e.g. /messages/{message_id}, so ids don't create new series.
+     * @param ctx
+     * @param executionTimeMs Time from the request arriving until the response was done.
+     */
+    private static void recordRequest(Context ctx, Float executionTimeMs) {
+        // No endpoint matched (404), the handler type is still BEFORE.
+        String route = ctx.handlerType() == HandlerType.BEFORE ? "unmatched" : ctx.endpointHandlerPath();
+        Metrics.timer("http_server_requests_seconds",
+                "method", ctx.method().name(),
+                "route", route,
+                "status", Integer.toString(ctx.statusCode()))
+                .record((long) (executionTimeMs * 1_000_000));
+    }
+
     /**
      * This is an example handler for an example endpoint.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
@@ -70,45 +311,121 @@ public class SocialMediaController {
     //     context.json("sample text");
     // }
 
+    /**
+     * The rates are set per route with -Dsocialmedia.rateLimit.{route}.perSecond and
+     * -Dsocialmedia.rateLimit.{route}.burst, and the buckets kept in memory with -Dsocialmedia.rateLimit.maxKeys.
+     * @param route Name of the route in the system properties.
+     * @param perSecond Default requests per second.
+     * @param burst Default requests at once.
+     * @return A rate limiter for the route.
+     */
+    private static RateLimiter rateLimiter(String route, double perSecond, int burst) {
+        String prefix = "socialmedia.rateLimit." + route + ".";
+        return new RateLimiter(
+                Double.parseDouble(System.getProperty(prefix + "perSecond", Double.toString(perSecond))),
+                Integer.getInteger(prefix + "burst", burst),
+                Long.getLong("socialmedia.rateLimit.maxKeys", 100_000));
+    }
+
+    /**
+     * Adds a before-handler that takes a token from the caller's bucket on every POST to the paths, and turns
+     * the request away with 429 when the bucket is empty.
+     * @param app
+     * @param limiter Buckets of the route.
+     * @param key Bucket of a request.
+     * @param paths Paths sharing the buckets.
+     */
+    private static void rateLimit(Javalin app, RateLimiter limiter, Function<Context, String> key, String... paths) {
+        for (String path : paths) {
+            app.before(path, ctx -> {
+                if (ctx.method() != HandlerType.POST) {
+                    return;
+                }
+                long wait = limiter.acquire(key.apply(ctx));
+                if (wait > 0) {
+                    throw new RateLimiter.LimitedException(wait);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param ctx
+     * @return Rate limit key of the client's address.
+     */
+    private static String remoteAddress(Context ctx) {
+        return "ip:" + ctx.ip();
+    }
+
+    /**
+     * @param ctx
+     * @return Rate limit key of the logged in account, or of the client's address without a session.
+     */
+    private String accountOrRemoteAddress(Context ctx) {
+        Integer caller = caller(ctx);
+        return caller != null ? "account:" + caller : remoteAddress(ctx);
+    }
+
     /**
      * Registration Handler
      * Sends an account object to AccountService.
      * Successful response returns account JSON and status is 200, Not successful returns status 400.
+     * The password in the response is the one sent, only a salted hash of it is stored.
+     * 503 if too many passwords are waiting to be hashed.
      * @param ctx Handles HTTP request and the response
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
-     */
-    private void registerHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account acc = mapper.readValue(ctx.body(), Account.class);
-        Account addedAcc = accService.addAccount(acc);
-        
-        if (addedAcc != null) {
-            ctx.json(mapper.writeValueAsString(addedAcc));
-            ctx.status(200);
-        } else {
-            ctx.status(400);
-        }
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
+     */
+    private void registerHandler(Context ctx) throws IOException {
+        Account acc = JsonUtil.ACCOUNT_READER.readValue(ctx.bodyInputStream());
+        respondAsync(ctx, () -> accService.addAccountAsync(acc), JsonUtil.ACCOUNT_WRITER, 400);
     }
 
     /**
      * Login Handler.
      * Request Body contains only username and password, no account_id.
      * Response Body should contain account_id, username, and password.
-     * Successful response: 200, Unsuccessful Response: 401.
+     * Successful response: 200, Unsuccessful Response: 401, 503 if too many passwords are waiting to be checked.
+     * A successful login starts a session, its token is in the "Authorization: Bearer {token}" response header.
+     * Send that header back to act as this account.
      * @param ctx Handles HTTP request and the response
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
      */
-    private void loginHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account acc = mapper.readValue(ctx.body(), Account.class);
-        Account loggedAcc = accService.login(acc);
+    private void loginHandler(Context ctx) throws IOException {
+        Account acc = JsonUtil.ACCOUNT_READER.readValue(ctx.bodyInputStream());
+        ctx.future(() -> accService.loginAsync(acc).thenAccept(loggedIn -> {
+            if (loggedIn != null) {
+                ctx.header("Authorization", BEARER + sessions.create(loggedIn.getAccount_id()));
+            }
+            writeResult(ctx, JsonUtil.ACCOUNT_WRITER, loggedIn, 401);
+        }));
+    }
 
-        if (loggedAcc != null) {
-            ctx.json(mapper.writeValueAsString(loggedAcc));
-            ctx.status(200);
-        } else {
-            ctx.status(401);
-        }
+    /**
+     * Logout Handler.
+     * Request has the "Authorization: Bearer {token}" header from /login, no body. The token stops working.
+     * Successful response: 200, Unsuccessful Response: 401 if the token is missing, invalid or already ended.
+     * @param ctx
+     */
+    private void logoutHandler(Context ctx) {
+        ctx.status(sessions.end(bearerToken(ctx)) ? 200 : 401);
+    }
+
+    /**
+     * @param ctx
+     * @return The token of the request's "Authorization: Bearer" header, or null.
+     */
+    private static String bearerToken(Context ctx) {
+        String header = ctx.header("Authorization");
+        return header != null && header.startsWith(BEARER) ? header.substring(BEARER.length()) : null;
+    }
+
+    /**
+     * Identifies the caller from the session token, in memory.
+     * @param ctx
+     * @return account_id of the caller, or null without a valid session.
+     */
+    private Integer caller(Context ctx) {
+        return sessions.authenticate(bearerToken(ctx));
     }
 
     /**
@@ -116,56 +433,212 @@ public class SocialMediaController {
      * Request body contains message but no message_id.
      * Response is message JSON containing message_id. 
      * Successful response: 200, Unsuccessful response: 400 (Client Error).
+     * With socialmedia.auth.required: 401 without a session, 403 if posted_by is not the caller.
      * @param ctx
-     * @throws JsonProcessingException
+     * @throws IOException
      */
-    private void createMessagesHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message m = mapper.readValue(ctx.body(), Message.class);
-        Message createdMs = msService.createMessage(m);
+    private void createMessagesHandler(Context ctx) throws IOException {
+        Message m = JsonUtil.MESSAGE_READER.readValue(ctx.bodyInputStream());
+        if (authRequired && !authorizePosters(ctx, m == null ? List.of() : List.of(m))) {
+            return;
+        }
+        respondAsync(ctx, () -> msService.createMessageAsync(m), JsonUtil.MESSAGE_WRITER, 400);
+    }
 
-        if (createdMs != null) {
-            ctx.json(mapper.writeValueAsString(createdMs));
-            ctx.status(200);
-        } else {
+    /**
+     * Batch Message Creation Handler.
+     * Request body is a JSON array of messages without message_id.
+     * Response is a JSON array with one result per message, in request order: either the saved message
+     * including its message_id, or an error saying why it was rejected. Valid messages are saved in one
+     * transaction even when others in the batch are rejected.
+     * Successful response: 200, 400 if the body is not an array or has more than MAX_BATCH_SIZE messages.
+     * With socialmedia.auth.required: 401 without a session, 403 if any posted_by is not the caller.
+     * @param ctx
+     * @throws IOException
+     */
+    private void createMessagesBatchHandler(Context ctx) throws IOException {
+        List<Message> messages = JsonUtil.MESSAGE_LIST_READER.readValue(ctx.bodyInputStream());
+        if (messages == null || messages.size() > MAX_BATCH_SIZE) {
             ctx.status(400);
+            return;
+        }
+        if (authRequired && !authorizePosters(ctx, messages)) {
+            return;
+        }
+        // One token per message, so a batch doesn't write more than the same messages posted one by one.
+        if (messageLimiter != null) {
+            long wait = messageLimiter.acquire(accountOrRemoteAddress(ctx), Math.max(1, messages.size()));
+            if (wait > 0) {
+                throw new RateLimiter.LimitedException(wait);
+            }
+        }
+
+        respondAsync(ctx, () -> msService.createMessagesAsync(messages), JsonUtil.MESSAGE_RESULT_LIST_WRITER, 200);
+    }
+
+    /**
+     * Checks that the caller has a session and posts as itself, answers 401 or 403 if not.
+     * @param ctx
+     * @param messages Messages to be created.
+     * @return true if the messages may be created.
+     */
+    private boolean authorizePosters(Context ctx, List<Message> messages) {
+        Integer caller = caller(ctx);
+        if (caller == null) {
+            ctx.status(401);
+            return false;
+        }
+        for (Message m : messages) {
+            if (m != null && m.getPosted_by() != caller) {
+                ctx.status(403);
+                return false;
+            }
         }
+        return true;
     }
 
     /**
      * Get All Messages Handler.
-     * Response is a list of all the messages in the database.
-     * All responses: 200.
+     * Without query parameters the response is a list of all the messages in the database, streamed
+     * from the database straight into the response.
+     * With ?after={message_id}&limit={n} the response is one page ordered by message_id. When there may be
+     * more, a Link header points at the next page.
+     * Responses: 200, 400 if after or limit is not a valid number.
      * @param ctx
-     * @throws JsonProcessingException
      */
-    private void getAllMessagesHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        List<Message> createdMs = msService.getAllMessages();
+    private void getAllMessagesHandler(Context ctx) {
+        String after = ctx.queryParam("after");
+        String limit = ctx.queryParam("limit");
+
+        if (after == null && limit == null) {
+            streamAllMessages(ctx);
+            return;
+        }
+
+        int afterId;
+        int pageSize;
+        try {
+            afterId = after == null ? 0 : Integer.parseInt(after);
+            pageSize = limit == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        if (afterId < 0 || pageSize < 1) {
+            ctx.status(400);
+            return;
+        }
+        int size = Math.min(pageSize, MAX_PAGE_SIZE);
+
+        ctx.future(() -> msService.getMessagesPageAsync(afterId, size).thenAccept(page -> {
+            if (page.size() == size) {
+                int lastId = page.get(page.size() - 1).getMessage_id();
+                ctx.header("Link", "</messages?after=" + lastId + "&limit=" + size + ">; rel=\"next\"");
+            }
+            writeResult(ctx, JsonUtil.MESSAGE_LIST_WRITER, page, 200);
+        }));
+    }
+
+    /**
+     * Writes every message as a JSON array, one element at a time while rows are read from the database.
+     * Nothing is written before the database executor accepts the work, so a rejection can still answer 503.
+     * If reading fails before the first message the request fails with 500. After that the array is left
+     * open and the connection is cut, so the client sees a broken response instead of a short list.
+     * @param ctx
+     */
+    private void streamAllMessages(Context ctx) {
+        ctx.future(() -> {
+            JsonGenerator[] gen = new JsonGenerator[1];
+            return msService.streamAllMessagesAsync(m -> {
+                if (gen[0] == null) {
+                    gen[0] = startArray(ctx);
+                }
+                JsonUtil.MESSAGE_ELEMENT_WRITER.writeValue(gen[0], m);
+            }).thenRun(() -> {
+                try (JsonGenerator g = gen[0] != null ? gen[0] : startArray(ctx)) {
+                    g.writeEndArray();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).exceptionally(e -> {
+                if (gen[0] == null) {
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }
+                LOG.error("Streaming GET /messages failed part way, aborting the response", e);
+                Request.getBaseRequest(ctx.req()).getHttpChannel().abort(e);
+                return null;
+            });
+        });
+    }
 
-        ctx.json(mapper.writeValueAsString(createdMs));
+    /**
+     * @param ctx
+     * @return A generator on the response that has written the opening bracket of a JSON array.
+     * @throws IOException
+     */
+    private static JsonGenerator startArray(Context ctx) throws IOException {
         ctx.status(200);
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        JsonGenerator gen = JsonUtil.MAPPER.getFactory().createGenerator(ctx.outputStream());
+        gen.writeStartArray();
+        return gen;
+    }
+
+    /**
+     * Search Messages Handler.
+     * Request has ?q={words}, optionally &offset={n}&limit={n}.
+     * Response is a list of the messages containing any of the words, best match first (BM25 ranking, then
+     * newest message_id). When there may be more, a Link header points at the next page.
+     * Responses: 200 with a list (empty if nothing matches), 400 if q is missing or blank, offset or limit is not
+     * valid, or offset + limit is over MAX_SEARCH_DEPTH.
+     * @param ctx
+     */
+    private void searchMessagesHandler(Context ctx) {
+        String query = ctx.queryParam("q");
+        String offsetParam = ctx.queryParam("offset");
+        String limit = ctx.queryParam("limit");
+        if (query == null || query.isBlank()) {
+            ctx.status(400);
+            return;
+        }
+
+        int offset;
+        int pageSize;
+        try {
+            offset = offsetParam == null ? 0 : Integer.parseInt(offsetParam);
+            pageSize = limit == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        int size = Math.min(pageSize, MAX_PAGE_SIZE);
+        if (offset < 0 || pageSize < 1 || offset + size > MAX_SEARCH_DEPTH) {
+            ctx.status(400);
+            return;
+        }
+
+        ctx.future(() -> msService.searchMessagesAsync(query, offset, size).thenAccept(page -> {
+            if (page.size() == size && offset + 2 * size <= MAX_SEARCH_DEPTH) {
+                ctx.header("Link", "</messages/search?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8)
+                        + "&offset=" + (offset + size) + "&limit=" + size + ">; rel=\"next\"");
+            }
+            writeResult(ctx, JsonUtil.MESSAGE_LIST_WRITER, page, 200);
+        }));
     }
 
     /**
      * Get one message by message_id.
      * Request has message_id in the path.
      * Response is one message from the database. Empty message if there is no such message.
-     * All responses: 200.
+     * A message comes with an ETag, send it back in If-None-Match to get 304 without a body while it is unchanged.
+     * A cached message is answered without the database either way.
+     * All responses: 200, or 304.
      * @param ctx
-     * @throws JsonProcessingException
      */
-    private void getOneMessageHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void getOneMessageHandler(Context ctx) {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        Message createdMs = msService.getOneMessageById(messageId);
-
         // Only return a JSON message if not null.
-        if (createdMs != null) {
-            ctx.json(mapper.writeValueAsString(createdMs));
-        }
-
-        ctx.status(200);
+        respondWithETag(ctx, () -> msService.getOneMessageByIdAsync(messageId), ETags::of, JsonUtil.MESSAGE_WRITER);
     }
 
     /**
@@ -173,19 +646,12 @@ public class SocialMediaController {
      * Request has message_id in the path.
      * If deleted the response body contains the deleted message. Empty JSON if there is no matched message.
      * Response is 200.
+     * With socialmedia.auth.required: 401 without a session, 403 if the message is someone else's.
      * @param ctx
-     * @throws JsonProcessingException
      */
-    private void deleteOneMessageHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void deleteOneMessageHandler(Context ctx) {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        Message deletedMs = msService.deleteOneMessageById(messageId);
-
-        if (deletedMs != null) {
-            ctx.json(mapper.writeValueAsString(deletedMs));
-        }
-
-        ctx.status(200);
+        respondIfOwner(ctx, messageId, () -> msService.deleteOneMessageByIdAsync(messageId), 200);
     }
 
     /**
@@ -193,40 +659,363 @@ public class SocialMediaController {
      * Request body contains the new message_text value and message_id.
      * Response body contains the full updated message.
      * Successful response: 200, Unsuccessful response: 400. 
+     * With socialmedia.auth.required: 401 without a session, 403 if the message is someone else's.
      * @param ctx
-     * @throws JsonProcessingException
+     * @throws IOException
      */
-    private void patchMessageHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message m = mapper.readValue(ctx.body(), Message.class);
+    private void patchMessageHandler(Context ctx) throws IOException {
+        Message m = JsonUtil.MESSAGE_READER.readValue(ctx.bodyInputStream());
 
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
         m.setMessage_id(messageId);
 
-        Message updatedMs = msService.updateMessage(m);
+        respondIfOwner(ctx, messageId, () -> msService.updateMessageAsync(m), 400);
+    }
 
-        if (updatedMs != null) {
-            ctx.json(mapper.writeValueAsString(updatedMs));
-            ctx.status(200);
-        } else {
-            ctx.status(400);
+    /**
+     * respondAsync for a change to one message. With socialmedia.auth.required the caller must have a session
+     * (401) and, if the message exists, be its poster (403). posted_by never changes, so it is checked against
+     * the message cache first and the change runs after.
+     * @param ctx
+     * @param messageId Message to change.
+     * @param call Starts the async change.
+     * @param statusIfNull Status to answer with, without a body, when the change returns null.
+     */
+    private void respondIfOwner(Context ctx, int messageId, Supplier<CompletableFuture<Message>> call,
+                                int statusIfNull) {
+        if (!authRequired) {
+            respondAsync(ctx, call, JsonUtil.MESSAGE_WRITER, statusIfNull);
+            return;
         }
+        Integer caller = caller(ctx);
+        if (caller == null) {
+            ctx.status(401);
+            return;
+        }
+        ctx.future(() -> msService.getOneMessageByIdAsync(messageId).thenCompose(existing -> {
+            if (existing != null && existing.getPosted_by() != caller) {
+                ctx.status(403);
+                return CompletableFuture.completedFuture(null);
+            }
+            return call.get().thenAccept(value -> writeResult(ctx, JsonUtil.MESSAGE_WRITER, value, statusIfNull));
+        }));
     }
 
     /**
      * Gets all messages from a specific account.
      * Request body is only the account_id.
      * Reponse body contains a JSON representation of a list containing all messages. Empty list if no messages.
+     * The list comes with an ETag, send it back in If-None-Match to get 304 without a body while it is unchanged.
+     * All responses: 200, or 304.
+     * @param ctx
+     */
+    private void getAllMessagesFromAccountHandler(Context ctx) {
+        int accId = Integer.parseInt(ctx.pathParam("account_id"));
+        respondWithETag(ctx, () -> msService.getAllMessagesFromAccountAsync(accId), ETags::of,
+                JsonUtil.MESSAGE_LIST_WRITER);
+    }
+
+    /**
+     * respondAsync for a conditional GET. The result is sent with its ETag, or not at all with 304 when the
+     * request's If-None-Match already has that tag, which saves serializing and sending it. The tag is computed
+     * from the result, so the service call still runs: for a list that is the full query, and a 304 saves
+     * bandwidth, not database work. Clients are asked to check back with the tag before reusing a copy.
+     * A null result is answered with 200 and no body.
+     * @param ctx
+     * @param call Starts the async service call.
+     * @param etagOf Entity tag of a result, from ETags.
+     * @param writer Pre-built writer for the result, from JsonUtil.
+     */
+    private static <T> void respondWithETag(Context ctx, Supplier<CompletableFuture<T>> call, Function<T, String> etagOf,
+                                            ObjectWriter writer) {
+        ctx.future(() -> call.get().thenAccept(value -> {
+            if (value != null) {
+                String etag = etagOf.apply(value);
+                ctx.header("ETag", etag);
+                ctx.header("Cache-Control", "no-cache");
+                if (ETags.matches(ctx.header("If-None-Match"), etag)) {
+                    ctx.status(304);
+                    return;
+                }
+            }
+            writeResult(ctx, writer, value, 200);
+        }));
+    }
+
+    /**
+     * Gets one page of an account's messages, newest first (time_posted_epoch, then message_id).
+     * Request has account_id in the path, optionally ?before={time_posted_epoch}:{message_id}&limit={n}.
+     * before is the cursor of the last message on the previous page; when there may be more, a Link
+     * header points at the next page.
+     * Responses: 200 with a list (empty if no messages), 400 if before or limit is not valid.
+     * @param ctx
+     */
+    private void getFeedHandler(Context ctx) {
+        int accId = Integer.parseInt(ctx.pathParam("account_id"));
+        respondNewestFirstPage(ctx, "/accounts/" + accId + "/feed",
+                (time, id, size) -> msService.getFeedPageAsync(accId, time, id, size));
+    }
+
+    /**
+     * Follow an account.
+     * Request has the follower's account_id and the followed account's followee_id in the path, no body.
+     * From now on the followed account's messages show up on the follower's home timeline, starting with
+     * its newest ones. Following an account again changes nothing.
+     * Successful response: 200, Unsuccessful response: 400 (an account doesn't exist, or it is the same account).
+     * @param ctx
+     */
+    private void followHandler(Context ctx) {
+        int accId = Integer.parseInt(ctx.pathParam("account_id"));
+        int followeeId = Integer.parseInt(ctx.pathParam("followee_id"));
+        ctx.future(() -> timelineService.followAsync(accId, followeeId).thenAccept(ok -> ctx.status(ok ? 200 : 400)));
+    }
+
+    /**
+     * Unfollow an account, its messages leave the follower's home timeline.
+     * Request has the follower's account_id and the followed account's followee_id in the path, no body.
+     * Unfollowing an account that isn't followed changes nothing.
+     * Successful response: 200, 500 if it couldn't be saved.
+     * @param ctx
+     */
+    private void unfollowHandler(Context ctx) {
+        int accId = Integer.parseInt(ctx.pathParam("account_id"));
+        int followeeId = Integer.parseInt(ctx.pathParam("followee_id"));
+        ctx.future(() -> timelineService.unfollowAsync(accId, followeeId).thenAccept(ok -> ctx.status(ok ? 200 : 500)));
+    }
+
+    /**
+     * Gets the account_ids an account follows, as a JSON array in ascending order. Empty if it follows nobody.
      * All responses: 200.
      * @param ctx
-     * @throws JsonProcessingException
      */
-    private void getAllMessagesFromAccountHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void getFolloweesHandler(Context ctx) {
         int accId = Integer.parseInt(ctx.pathParam("account_id"));
+        respondAsync(ctx, () -> timelineService.getFolloweesAsync(accId), JsonUtil.ID_LIST_WRITER, 200);
+    }
+
+    /**
+     * Gets the account_ids that follow an account, as a JSON array in ascending order. Empty if nobody does.
+     * All responses: 200.
+     * @param ctx
+     */
+    private void getFollowersHandler(Context ctx) {
+        int accId = Integer.parseInt(ctx.pathParam("account_id"));
+        respondAsync(ctx, () -> timelineService.getFollowersAsync(accId), JsonUtil.ID_LIST_WRITER, 200);
+    }
+
+    /**
+     * Gets one page of an account's home timeline: the messages of the accounts it follows, newest first
+     * (time_posted_epoch, then message_id). Paged like the feed, with ?before={time_posted_epoch}:{message_id}&limit={n}.
+     * Responses: 200 with a list (empty if no messages), 400 if before or limit is not valid.
+     * @param ctx
+     */
+    private void getHomeHandler(Context ctx) {
+        int accId = Integer.parseInt(ctx.pathParam("account_id"));
+        respondNewestFirstPage(ctx, "/accounts/" + accId + "/home",
+                (time, id, size) -> timelineService.getHomePageAsync(accId, time, id, size));
+    }
+
+    /**
+     * Gets one page of the messages that mention an account by @username, newest first
+     * (time_posted_epoch, then message_id). Paged like the feed, with ?before={time_posted_epoch}:{message_id}&limit={n}.
+     * Responses: 200 with a list (empty if no messages), 400 if before or limit is not valid.
+     * @param ctx
+     */
+    private void getMentionsHandler(Context ctx) {
+        int accId = Integer.parseInt(ctx.pathParam("account_id"));
+        respondNewestFirstPage(ctx, "/accounts/" + accId + "/mentions",
+                (time, id, size) -> tagService.getMentionPageAsync(accId, time, id, size));
+    }
+
+    /**
+     * Gets one page of the messages with a #tag, newest first (time_posted_epoch, then message_id).
+     * Request has the tag in the path, without the # and in any case. Paged like the feed,
+     * with ?before={time_posted_epoch}:{message_id}&limit={n}.
+     * Responses: 200 with a list (empty if no messages), 400 if before or limit is not valid.
+     * @param ctx
+     */
+    private void getTagMessagesHandler(Context ctx) {
+        String tag = ctx.pathParam("tag");
+        respondNewestFirstPage(ctx, "/tags/" + URLEncoder.encode(tag, StandardCharsets.UTF_8) + "/messages",
+                (time, id, size) -> tagService.getTagPageAsync(tag, time, id, size));
+    }
+
+    /**
+     * Gets the tags used by the most new messages within the trending window (an hour by default),
+     * most used first, as a JSON array of {"tag", "count"}. Optionally ?limit={n}.
+     * Counted in memory, so this never reads the database.
+     * Responses: 200 with a list (empty if no tags were used), 400 if limit is not valid.
+     * @param ctx
+     * @throws IOException
+     */
+    private void getTrendingTagsHandler(Context ctx) throws IOException {
+        String limit = ctx.queryParam("limit");
+        int size;
+        try {
+            size = limit == null ? DEFAULT_TRENDING_SIZE : Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        if (size < 1) {
+            ctx.status(400);
+            return;
+        }
+        List<TagCount> trending = tagService.getTrending(Math.min(size, MAX_PAGE_SIZE));
+        writeJson(ctx, JsonUtil.TAG_COUNT_LIST_WRITER, trending);
+    }
+
+    /**
+     * Loads one page of messages ordered newest first, for ?before={time_posted_epoch}:{message_id}&limit={n}.
+     */
+    private interface NewestFirstPage {
+        CompletableFuture<List<Message>> load(long beforeTime, int beforeId, int limit);
+    }
+
+    /**
+     * Answers with one page of messages ordered newest first (time_posted_epoch, then message_id).
+     * before is the cursor of the last message on the previous page; when there may be more, a Link
+     * header points at the next page.
+     * Responses: 200 with a list, 400 if before or limit is not valid.
+     * @param ctx
+     * @param path Path of the endpoint, used in the Link header.
+     * @param page Starts the async load of the page.
+     */
+    private static void respondNewestFirstPage(Context ctx, String path, NewestFirstPage page) {
+        String before = ctx.queryParam("before");
+        String limit = ctx.queryParam("limit");
+
+        long beforeTime = Long.MAX_VALUE;
+        int beforeId = Integer.MAX_VALUE;
+        int pageSize;
+        try {
+            if (before != null) {
+                int colon = before.indexOf(':');
+                beforeTime = Long.parseLong(before.substring(0, colon));
+                beforeId = Integer.parseInt(before.substring(colon + 1));
+            }
+            pageSize = limit == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            ctx.status(400);
+            return;
+        }
+        if (pageSize < 1) {
+            ctx.status(400);
+            return;
+        }
+        int size = Math.min(pageSize, MAX_PAGE_SIZE);
+
+        long time = beforeTime;
+        int id = beforeId;
+        ctx.future(() -> page.load(time, id, size).thenAccept(messages -> {
+            if (messages.size() == size) {
+                Message last = messages.get(messages.size() - 1);
+                ctx.header("Link", "<" + path + "?before=" + last.getTime_posted_epoch() + ":"
+                        + last.getMessage_id() + "&limit=" + size + ">; rel=\"next\"");
+            }
+            writeResult(ctx, JsonUtil.MESSAGE_LIST_WRITER, messages, 200);
+        }));
+    }
+
+    /**
+     * Runs a service call on the database executor and answers with its result once it completes.
+     * The request thread is released in the meantime. If the executor is full the call fails with
+     * RejectedExecutionException, which is answered with 503.
+     * @param ctx
+     * @param call Starts the async service call.
+     * @param writer Pre-built writer for the result, from JsonUtil.
+     * @param statusIfNull Status to answer with, without a body, when the result is null.
+     */
+    private static <T> void respondAsync(Context ctx, Supplier<CompletableFuture<T>> call, ObjectWriter writer,
+                                         int statusIfNull) {
+        ctx.future(() -> call.get().thenAccept(value -> writeResult(ctx, writer, value, statusIfNull)));
+    }
+
+    /**
+     * writeJson for use inside a future callback.
+     * @param ctx
+     * @param writer Pre-built writer for the type of value, from JsonUtil.
+     * @param value Object to serialize, or null for an empty body.
+     * @param statusIfNull Status to answer with when value is null.
+     */
+    private static void writeResult(Context ctx, ObjectWriter writer, Object value, int statusIfNull) {
+        if (value == null) {
+            ctx.status(statusIfNull);
+            return;
+        }
+        try {
+            writeJson(ctx, writer, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Serializes a value straight into the response output stream with a pre-built writer,
+     * without building an intermediate String. Responds with status 200.
+     * The status is set before writing because a large body may commit the response while it is written.
+     * @param ctx
+     * @param writer Pre-built writer for the type of value, from JsonUtil.
+     * @param value Object to serialize.
+     * @throws IOException
+     */
+    private static void writeJson(Context ctx, ObjectWriter writer, Object value) throws IOException {
+        ctx.status(200);
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        writer.writeValue(ctx.outputStream(), value);
+    }
+
+    /**
+     * Exposes request and query latencies, JVM gauges, the connection pool gauges and message cache
+     * counters in the Prometheus text format.
+     * All responses: 200.
+     * @param ctx
+     */
+    private void metricsHandler(Context ctx) {
+        ConnectionPool pool = ConnectionUtil.getPool();
+        StringBuilder sb = new StringBuilder();
+        Metrics.writeTimers(sb);
+        Metrics.writeJvm(sb);
+        Metrics.append(sb, "db_pool_active_connections", "gauge", pool.getActiveCount());
+        Metrics.append(sb, "db_pool_idle_connections", "gauge", pool.getIdleCount());
+        Metrics.append(sb, "db_pool_total_connections", "gauge", pool.getTotalCount());
+        Metrics.append(sb, "db_pool_max_connections", "gauge", pool.getMaxSize());
+        Metrics.append(sb, "db_pool_waiting_threads", "gauge", pool.getWaiterCount());
+        Metrics.append(sb, "db_pool_acquire_total", "counter", pool.getAcquireCount());
+        Metrics.append(sb, "db_pool_acquire_seconds_sum", "counter", pool.getAcquireNanos() / 1e9);
+        Metrics.append(sb, "db_pool_acquire_seconds_max", "gauge", pool.getMaxAcquireNanos() / 1e9);
+        Metrics.append(sb, "db_pool_acquire_timeouts_total", "counter", pool.getTimeoutCount());
+        Metrics.append(sb, "db_pool_leaks_total", "counter", pool.getLeakCount());
+        Metrics.append(sb, "db_statement_cache_hits_total", "counter", pool.getStatementCacheHits());
+        Metrics.append(sb, "db_statement_cache_misses_total", "counter", pool.getStatementCacheMisses());
+
+        CacheStats cache = msService.getMessageCacheStats();
+        Metrics.append(sb, "message_cache_hits_total", "counter", cache.hitCount());
+        Metrics.append(sb, "message_cache_misses_total", "counter", cache.missCount());
+        Metrics.append(sb, "message_cache_evictions_total", "counter", cache.evictionCount());
+        Metrics.append(sb, "message_cache_size", "gauge", msService.getMessageCacheSize());
+        Metrics.append(sb, "group_commit_batches_total", "counter", msService.getGroupCommitBatchCount());
+        Metrics.append(sb, "group_commit_messages_total", "counter", msService.getGroupCommitMessageCount());
+        Metrics.append(sb, "recent_messages_hits_total", "counter", msService.getRecentHitCount());
+        Metrics.append(sb, "recent_messages_misses_total", "counter", msService.getRecentMissCount());
+        Metrics.append(sb, "recent_messages_accounts", "gauge", msService.getRecentAccountCount());
+        Metrics.append(sb, "search_index_messages", "gauge", msService.getSearchIndexSize());
+        Metrics.append(sb, "timeline_fan_out_on_read_accounts", "gauge", timelineService.getFanOutOnReadCount());
+        Metrics.append(sb, "sessions_active", "gauge", sessions.size());
+
+        DbExecutor executor = DbExecutor.getShared();
+        Metrics.append(sb, "db_executor_active_threads", "gauge", executor.getActiveCount());
+        Metrics.append(sb, "db_executor_queued_tasks", "gauge", executor.getQueueSize());
+        Metrics.append(sb, "db_executor_queue_capacity", "gauge", executor.getQueueCapacity());
+        Metrics.append(sb, "db_executor_rejected_total", "counter", executor.getRejectedCount());
+
+        DbExecutor hashExecutor = accService.getHashExecutor();
+        Metrics.append(sb, "password_executor_active_threads", "gauge", hashExecutor.getActiveCount());
+        Metrics.append(sb, "password_executor_queued_tasks", "gauge", hashExecutor.getQueueSize());
+        Metrics.append(sb, "password_executor_rejected_total", "counter", hashExecutor.getRejectedCount());
 
-        List<Message> allMessages = msService.getAllMessagesFromAccount(accId);
-        ctx.json(mapper.writeValueAsString(allMessages));
+        ctx.contentType("text/plain; version=0.0.4");
+        ctx.result(sb.toString());
         ctx.status(200);
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,12 @@
 package DAO;
 
 import Util.ConnectionUtil;
+import Util.Metrics;
 import Model.Account;
 
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -11,29 +14,41 @@ import java.sql.SQLException;
 
 
 public class AccountDAO {
+    /**
+     * Columns in the order mapRow() reads them.
+     */
+    private static final String COLUMNS = "account_id, username, password";
+
+    // Latency of each query, in db_query_seconds on /metrics.
+    private static final Metrics.Timer GET_ACCOUNT_BY_ID = Metrics.timer("db_query_seconds", "query", "AccountDAO.getAccountByID");
+    private static final Metrics.Timer GET_ACCOUNT_BY_USERNAME = Metrics.timer("db_query_seconds", "query", "AccountDAO.getAccountByUsername");
+    private static final Metrics.Timer GET_ALL_ACCOUNTS = Metrics.timer("db_query_seconds", "query", "AccountDAO.getAllAccounts");
+    private static final Metrics.Timer INSERT_ACCOUNT = Metrics.timer("db_query_seconds", "query", "AccountDAO.insertAccount");
+    private static final Metrics.Timer UPDATE_PASSWORD = Metrics.timer("db_query_seconds", "query", "AccountDAO.updatePassword");
+
     /**
      * NOT SURE IF THIS IS NEEDED
      * Get account from account_id
      * @return Account
      */
     public Account getAccountByID(int accountID){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "SELECT * FROM account WHERE account_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT " + COLUMNS + " FROM account WHERE account_id = ?";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setInt(1, accountID);
             
             // ResultSet to get the result from query
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                Account acc = new Account(
-                        rs.getInt("account_id"),
-                        rs.getString("username"),
-                        rs.getString("password"));
-                return acc;
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    Account acc = mapRow(rs);
+                    return acc;
+                }
             }
         } catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            GET_ACCOUNT_BY_ID.recordSince(start);
         }
         return null;
     }
@@ -43,38 +58,60 @@ public class AccountDAO {
      * @return Account
      */
     public Account getAccountByUsername(String user){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "SELECT * FROM account WHERE username = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT " + COLUMNS + " FROM account WHERE username = ?";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setString(1, user);
             
             // ResultSet to get the result from query
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                Account acc = new Account(
-                        rs.getInt("account_id"),
-                        rs.getString("username"),
-                        rs.getString("password"));
-                return acc;
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    Account acc = mapRow(rs);
+                    return acc;
+                }
             }
         } catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            GET_ACCOUNT_BY_USERNAME.recordSince(start);
         }
         return null;
     }
 
+    /**
+     * Get every account, used to warm the account index at startup.
+     * @return List of all accounts.
+     */
+    public List<Account> getAllAccounts(){
+        List<Account> accounts = new ArrayList<>();
+        String sql = "SELECT " + COLUMNS + " FROM account";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql);
+             ResultSet rs = preparedStatement.executeQuery()) {
+            while(rs.next()){
+                accounts.add(mapRow(rs));
+            }
+        } catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            GET_ALL_ACCOUNTS.recordSince(start);
+        }
+        return accounts;
+    }
+
     /**
      * Insert/Create an account for user registration.
      * @return Account Object, including its account_id
      */
     public Account insertAccount(Account acc){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "INSERT INTO account (username, password) VALUES (?, ?)" ;
+        String sql = "INSERT INTO account (username, password) VALUES (?, ?)" ;
 
-            // Statement.RETURN_GENERATED_KEYS retrieved from Flight Tracker Mini Project
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        // Statement.RETURN_GENERATED_KEYS retrieved from Flight Tracker Mini Project
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             preparedStatement.setString(1, acc.getUsername());
             preparedStatement.setString(2, acc.getPassword());
@@ -82,18 +119,51 @@ public class AccountDAO {
             preparedStatement.executeUpdate();
 
             // Fetching generated keys. Retrieved from Flight Tracker Mini Project
-            ResultSet generatedKeys = preparedStatement.getGeneratedKeys();
-            if(generatedKeys.next()){
-                int generatedId = generatedKeys.getInt(1);
-                return new Account(generatedId, acc.getUsername(), acc.getPassword());
-            } else {
-                throw new SQLException("Creating account failed, no ID obtained.");
+            try (ResultSet generatedKeys = preparedStatement.getGeneratedKeys()) {
+                if(generatedKeys.next()){
+                    int generatedId = generatedKeys.getInt(1);
+                    return new Account(generatedId, acc.getUsername(), acc.getPassword());
+                } else {
+                    throw new SQLException("Creating account failed, no ID obtained.");
+                }
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            INSERT_ACCOUNT.recordSince(start);
         }
         return null;
     }
 
-}
+    /**
+     * Replace the stored password of an account, when its hash is upgraded.
+     * @param accountId
+     * @param password New stored password hash.
+     * @return true if the account was updated.
+     */
+    public boolean updatePassword(int accountId, String password){
+        String sql = "UPDATE account SET password = ? WHERE account_id = ?";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setString(1, password);
+            preparedStatement.setInt(2, accountId);
+            return preparedStatement.executeUpdate() == 1;
+        } catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            UPDATE_PASSWORD.recordSince(start);
+        }
+        return false;
+    }
 
+    /**
+     * Turns the current row of a query that selected COLUMNS into an Account.
+     * @param rs ResultSet positioned on a row.
+     * @return Account
+     * @throws SQLException
+     */
+    private static Account mapRow(ResultSet rs) throws SQLException {
+        return new Account(rs.getInt(1), rs.getString(2), rs.getString(3));
+    }
+}
@@ -0,0 +1,271 @@
+package DAO;
+
+import Util.ConnectionUtil;
+import Util.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The follow graph, and the accounts whose messages are merged into home timelines on read.
+ */
+public class FollowDAO {
+    // Latency of each query, in db_query_seconds on /metrics.
+    private static final Metrics.Timer FOLLOW = Metrics.timer("db_query_seconds", "query", "FollowDAO.follow");
+    private static final Metrics.Timer UNFOLLOW = Metrics.timer("db_query_seconds", "query", "FollowDAO.unfollow");
+    private static final Metrics.Timer GET_FOLLOWEES = Metrics.timer("db_query_seconds", "query", "FollowDAO.getFollowees");
+    private static final Metrics.Timer GET_FOLLOWERS = Metrics.timer("db_query_seconds", "query", "FollowDAO.getFollowers");
+    private static final Metrics.Timer COUNT_FOLLOWERS = Metrics.timer("db_query_seconds", "query", "FollowDAO.countFollowers");
+    private static final Metrics.Timer GET_FOLLOWED_AMONG = Metrics.timer("db_query_seconds", "query", "FollowDAO.getFollowedAmong");
+    private static final Metrics.Timer GET_FAN_OUT_ON_READ = Metrics.timer("db_query_seconds", "query", "FollowDAO.getFanOutOnReadAccounts");
+    private static final Metrics.Timer ADD_FAN_OUT_ON_READ = Metrics.timer("db_query_seconds", "query", "FollowDAO.addFanOutOnRead");
+
+    /**
+     * Follow an account and copy its newest messages into the follower's home timeline, in one transaction.
+     * Following an account that is already followed changes nothing.
+     * @param followerId Account that follows.
+     * @param followeeId Account that is followed.
+     * @param backfill How many of the followee's newest messages to copy, 0 for none.
+     * @return true if the follower now follows the followee, false if it failed.
+     */
+    public boolean follow(int followerId, int followeeId, int backfill) {
+        String insert = "INSERT INTO follow (follower_id, followee_id) SELECT ?, ?"
+                + " WHERE NOT EXISTS (SELECT 1 FROM follow WHERE follower_id = ? AND followee_id = ?)";
+        // MERGE, a message posted while this runs may already have been fanned out to the follower.
+        String copy = "MERGE INTO home_timeline (owner_id, message_id, posted_by, time_posted_epoch) KEY (owner_id, message_id)"
+                + " SELECT ?, message_id, posted_by, time_posted_epoch FROM message WHERE posted_by = ?"
+                + " ORDER BY posted_by, time_posted_epoch DESC, message_id DESC LIMIT ?";
+
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement insertStatement = connection.prepareStatement(insert)) {
+                insertStatement.setInt(1, followerId);
+                insertStatement.setInt(2, followeeId);
+                insertStatement.setInt(3, followerId);
+                insertStatement.setInt(4, followeeId);
+
+                // Nothing inserted, already following.
+                if (insertStatement.executeUpdate() == 1 && backfill > 0) {
+                    try (PreparedStatement copyStatement = connection.prepareStatement(copy)) {
+                        copyStatement.setInt(1, followerId);
+                        copyStatement.setInt(2, followeeId);
+                        copyStatement.setInt(3, backfill);
+                        copyStatement.executeUpdate();
+                    }
+                }
+                connection.commit();
+                return true;
+            } catch(SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            FOLLOW.recordSince(start);
+        }
+        return false;
+    }
+
+    /**
+     * Stop following an account and remove its messages from the follower's home timeline, in one transaction.
+     * Unfollowing an account that isn't followed changes nothing.
+     * @param followerId Account that follows.
+     * @param followeeId Account that is followed.
+     * @return true if the follower no longer follows the followee, false if it failed.
+     */
+    public boolean unfollow(int followerId, int followeeId) {
+        String delete = "DELETE FROM follow WHERE follower_id = ? AND followee_id = ?";
+        String remove = "DELETE FROM home_timeline WHERE owner_id = ? AND posted_by = ?";
+
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement deleteStatement = connection.prepareStatement(delete);
+                 PreparedStatement removeStatement = connection.prepareStatement(remove)) {
+                deleteStatement.setInt(1, followerId);
+                deleteStatement.setInt(2, followeeId);
+                deleteStatement.executeUpdate();
+
+                removeStatement.setInt(1, followerId);
+                removeStatement.setInt(2, followeeId);
+                removeStatement.executeUpdate();
+
+                connection.commit();
+                return true;
+            } catch(SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            UNFOLLOW.recordSince(start);
+        }
+        return false;
+    }
+
+    /**
+     * Get the accounts an account follows.
+     * @param followerId Account that follows.
+     * @return account_ids in ascending order, empty if it follows nobody.
+     */
+    public List<Integer> getFollowees(int followerId) {
+        String sql = "SELECT followee_id FROM follow WHERE follower_id = ? ORDER BY followee_id";
+        long start = System.nanoTime();
+        try {
+            return queryIds(sql, followerId);
+        } finally {
+            GET_FOLLOWEES.recordSince(start);
+        }
+    }
+
+    /**
+     * Get the accounts that follow an account.
+     * @param followeeId Account that is followed.
+     * @return account_ids in ascending order, empty if nobody follows it.
+     */
+    public List<Integer> getFollowers(int followeeId) {
+        String sql = "SELECT follower_id FROM follow WHERE followee_id = ? ORDER BY followee_id, follower_id";
+        long start = System.nanoTime();
+        try {
+            return queryIds(sql, followeeId);
+        } finally {
+            GET_FOLLOWERS.recordSince(start);
+        }
+    }
+
+    /**
+     * Count the followers of an account, stopping at a limit so the cost stays bounded for popular accounts.
+     * @param followeeId Account that is followed.
+     * @param upTo Largest count of interest.
+     * @return Number of followers, at most upTo, or -1 if the query failed.
+     */
+    public int countFollowers(int followeeId, int upTo) {
+        String sql = "SELECT COUNT(*) FROM (SELECT 1 FROM follow WHERE followee_id = ? LIMIT ?)";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, followeeId);
+            preparedStatement.setInt(2, upTo);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if(rs.next()){
+                    return rs.getInt(1);
+                }
+            }
+        } catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            COUNT_FOLLOWERS.recordSince(start);
+        }
+        return -1;
+    }
+
+    /**
+     * Of some candidate accounts, get the ones an account follows.
+     * Costs one primary key lookup per candidate, however many accounts the follower follows.
+     * @param followerId Account that follows.
+     * @param candidates Accounts to check.
+     * @return The followed candidates, empty if none.
+     */
+    public List<Integer> getFollowedAmong(int followerId, Collection<Integer> candidates) {
+        List<Integer> followed = new ArrayList<>();
+        if (candidates.isEmpty()) {
+            return followed;
+        }
+        String sql = "SELECT f.followee_id FROM UNNEST(?) AS c(id)"
+                + " JOIN follow f ON f.follower_id = ? AND f.followee_id = c.id";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            Array ids = connection.createArrayOf("INTEGER", candidates.toArray());
+            preparedStatement.setArray(1, ids);
+            preparedStatement.setInt(2, followerId);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    followed.add(rs.getInt(1));
+                }
+            }
+        } catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            GET_FOLLOWED_AMONG.recordSince(start);
+        }
+        return followed;
+    }
+
+    /**
+     * Get the accounts whose messages are merged into home timelines when they are read.
+     * @return account_ids, empty if there are none.
+     */
+    public List<Integer> getFanOutOnReadAccounts() {
+        List<Integer> ids = new ArrayList<>();
+        String sql = "SELECT account_id FROM fan_out_on_read";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql);
+             ResultSet rs = preparedStatement.executeQuery()) {
+            while(rs.next()){
+                ids.add(rs.getInt(1));
+            }
+        } catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            GET_FAN_OUT_ON_READ.recordSince(start);
+        }
+        return ids;
+    }
+
+    /**
+     * Merge an account's messages into home timelines when they are read, from now on.
+     * @param accountId Account to add.
+     * @return true if the account is now fanned out on read, false if it failed.
+     */
+    public boolean addFanOutOnRead(int accountId) {
+        String sql = "MERGE INTO fan_out_on_read (account_id) KEY (account_id) VALUES (?)";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, accountId);
+            preparedStatement.executeUpdate();
+            return true;
+        } catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            ADD_FAN_OUT_ON_READ.recordSince(start);
+        }
+        return false;
+    }
+
+    /**
+     * Runs a query that selects one int column, with one int parameter.
+     * @param sql Query.
+     * @param id Parameter.
+     * @return The selected ids, empty if there are none or the query failed.
+     */
+    private static List<Integer> queryIds(String sql, int id) {
+        List<Integer> ids = new ArrayList<>();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, id);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    ids.add(rs.getInt(1));
+                }
+            }
+        } catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return ids;
+    }
+}
@@ -1,8 +1,10 @@
 package DAO;
 
 import Util.ConnectionUtil;
+import Util.Metrics;
 import Model.Message;
 
+import java.io.IOException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
@@ -12,6 +14,35 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 public class MessageDAO {
+    /**
+     * Rows fetched per round trip when streaming the message table.
+     */
+    private static final int FETCH_SIZE = Integer.getInteger("socialmedia.db.fetchSize", 500);
+
+    /**
+     * Columns in the order mapRow() reads them. Listing them (instead of SELECT *) lets rows be read by
+     * column index rather than by name.
+     */
+    private static final String COLUMNS = "message_id, posted_by, message_text, time_posted_epoch";
+
+    // Latency of each query, in db_query_seconds on /metrics.
+    private static final Metrics.Timer ADD_MESSAGE = Metrics.timer("db_query_seconds", "query", "MessageDAO.addMessage");
+    private static final Metrics.Timer ADD_MESSAGES = Metrics.timer("db_query_seconds", "query", "MessageDAO.addMessages");
+    private static final Metrics.Timer GET_ALL_MESSAGES = Metrics.timer("db_query_seconds", "query", "MessageDAO.getAllMessages");
+    private static final Metrics.Timer GET_MESSAGES_AFTER = Metrics.timer("db_query_seconds", "query", "MessageDAO.getMessagesAfter");
+    private static final Metrics.Timer FOR_EACH_MESSAGE = Metrics.timer("db_query_seconds", "query", "MessageDAO.forEachMessage");
+    private static final Metrics.Timer GET_MESSAGE_BY_ID = Metrics.timer("db_query_seconds", "query", "MessageDAO.getMessageById");
+    private static final Metrics.Timer DELETE_MESSAGE_BY_ID = Metrics.timer("db_query_seconds", "query", "MessageDAO.deleteMessageById");
+    private static final Metrics.Timer UPDATE_MESSAGE_BY_ID = Metrics.timer("db_query_seconds", "query", "MessageDAO.updateMessageById");
+    private static final Metrics.Timer GET_ALL_MESSAGES_FROM_ACCOUNT_ID = Metrics.timer("db_query_seconds", "query", "MessageDAO.getAllMessagesFromAccountId");
+    private static final Metrics.Timer GET_FEED_PAGE = Metrics.timer("db_query_seconds", "query", "MessageDAO.getFeedPage");
+
+    /**
+     * Receives messages one at a time while they are read from the database.
+     */
+    public interface MessageConsumer {
+        void accept(Message m) throws IOException;
+    }
     
     /**
      * Add a message to the database.
@@ -19,12 +50,12 @@ public class MessageDAO {
      * @return Message Object containing message_id or null.
      */
     public Message addMessage(Message m) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)" ;
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)" ;
 
-            // Statement.RETURN_GENERATED_KEYS retrieved from Flight Tracker Mini Project
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        // Statement.RETURN_GENERATED_KEYS retrieved from Flight Tracker Mini Project
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             preparedStatement.setInt(1, m.getPosted_by());
             preparedStatement.setString(2, m.getMessage_text());
@@ -34,15 +65,66 @@ public class MessageDAO {
             preparedStatement.executeUpdate();
 
             // Fetching generated keys. Retrieved from Flight Tracker Mini Project
-            ResultSet generatedKeys = preparedStatement.getGeneratedKeys();
-            if(generatedKeys.next()){
-                int generatedId = generatedKeys.getInt(1);
-                return new Message(generatedId, m.getPosted_by(), m.getMessage_text(), m.getTime_posted_epoch());
-            } else {
-                throw new SQLException("Creating message failed, no ID obtained.");
+            try (ResultSet generatedKeys = preparedStatement.getGeneratedKeys()) {
+                if(generatedKeys.next()){
+                    int generatedId = generatedKeys.getInt(1);
+                    return new Message(generatedId, m.getPosted_by(), m.getMessage_text(), m.getTime_posted_epoch());
+                } else {
+                    throw new SQLException("Creating message failed, no ID obtained.");
+                }
+            }
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            ADD_MESSAGE.recordSince(start);
+        }
+        return null;
+    }
+
+    /**
+     * Add many messages to the database with one JDBC batch in a single transaction.
+     * Either every message is saved or none are.
+     * @param messages Messages without message_id.
+     * @return The messages including their generated message_id, in the same order, or null if the batch failed.
+     */
+    public List<Message> addMessages(List<Message> messages) {
+        List<Message> added = new ArrayList<>(messages.size());
+        if (messages.isEmpty()) {
+            return added;
+        }
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)" ;
+
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (Message m : messages) {
+                    preparedStatement.setInt(1, m.getPosted_by());
+                    preparedStatement.setString(2, m.getMessage_text());
+                    preparedStatement.setLong(3, m.getTime_posted_epoch());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+
+                // One generated key per row, in batch order.
+                try (ResultSet generatedKeys = preparedStatement.getGeneratedKeys()) {
+                    for (Message m : messages) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("Creating messages failed, not every ID was obtained.");
+                        }
+                        added.add(new Message(generatedKeys.getInt(1), m.getPosted_by(), m.getMessage_text(), m.getTime_posted_epoch()));
+                    }
+                }
+                connection.commit();
+                return added;
+            } catch(SQLException e) {
+                connection.rollback();
+                throw e;
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ADD_MESSAGES.recordSince(start);
         }
         return null;
     }
@@ -52,25 +134,91 @@ public class MessageDAO {
      * @return List of all the messages.
      */
     public List<Message> getAllMessages() {
-        Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
-        try {
-            String sql = "SELECT * FROM message";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            ResultSet rs = preparedStatement.executeQuery();
+        String sql = "SELECT " + COLUMNS + " FROM message";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql);
+             ResultSet rs = preparedStatement.executeQuery()) {
             while(rs.next()){
-                Message ms = new Message(rs.getInt("message_id"), 
-                                        rs.getInt("posted_by"),
-                                        rs.getString("message_text"),
-                                        rs.getLong("time_posted_epoch"));
+                Message ms = mapRow(rs);
                 messages.add(ms);
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            GET_ALL_MESSAGES.recordSince(start);
         }
         return messages;
     }
 
+    /**
+     * Get one page of messages ordered by message_id, starting after a cursor.
+     * Uses the primary key index so every page costs the same no matter how deep it is.
+     * @param afterId Only messages with a larger message_id are returned, 0 for the first page.
+     * @param limit Maximum number of messages in the page.
+     * @return List of messages, empty if there are no more.
+     */
+    public List<Message> getMessagesAfter(int afterId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        String sql = "SELECT " + COLUMNS + " FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, afterId);
+            preparedStatement.setInt(2, limit);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    Message ms = mapRow(rs);
+                    messages.add(ms);
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            GET_MESSAGES_AFTER.recordSince(start);
+        }
+        return messages;
+    }
+
+    /**
+     * Stream every message to the consumer as it is read, without collecting them in a list.
+     * The query runs lazily (H2 LAZY_QUERY_EXECUTION) with the configured fetch size, so memory use
+     * stays constant no matter how big the table is.
+     * A failure part way through is thrown, not swallowed, so the caller never mistakes the messages it
+     * got so far for all of them.
+     * @param consumer Called once per message, in message_id order.
+     * @throws IOException if the query fails (wrapping the SQLException) or the consumer fails, e.g. the
+     * client went away.
+     */
+    public void forEachMessage(MessageConsumer consumer) throws IOException {
+        String sql = "SELECT " + COLUMNS + " FROM message ORDER BY message_id";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            try (Statement setting = connection.createStatement()) {
+                setting.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                preparedStatement.setFetchSize(FETCH_SIZE);
+                try (ResultSet rs = preparedStatement.executeQuery()) {
+                    while(rs.next()){
+                        consumer.accept(mapRow(rs));
+                    }
+                }
+            } finally {
+                // Connection goes back to the pool, don't leave the session setting behind.
+                try (Statement setting = connection.createStatement()) {
+                    setting.execute("SET LAZY_QUERY_EXECUTION FALSE");
+                }
+            }
+        } catch(SQLException e){
+            throw new IOException("Reading messages failed", e);
+        } finally {
+            FOR_EACH_MESSAGE.recordSince(start);
+        }
+    }
+
     /**
      * Returns a message from the database.
      * If message doesn't exist, return null.
@@ -78,22 +226,22 @@ public class MessageDAO {
      * @return Message or null.
      */
     public Message getMessageById(int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "SELECT * FROM message WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT " + COLUMNS + " FROM message WHERE message_id = ?";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setInt(1, message_id);
             
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                Message ms = new Message(rs.getInt("message_id"), 
-                                        rs.getInt("posted_by"),
-                                        rs.getString("message_text"),
-                                        rs.getLong("time_posted_epoch"));
-                return ms;
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    Message ms = mapRow(rs);
+                    return ms;
+                }
             }
         } catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            GET_MESSAGE_BY_ID.recordSince(start);
         }
 
         return null;
@@ -102,23 +250,27 @@ public class MessageDAO {
     /**
      * Delete a message from the database, based on the message_id.
      * If there is no matching message, return null.
+     * One statement: the DELETE runs inside a SELECT on H2's OLD TABLE delta table, so the row
+     * returned is exactly the row that was deleted.
      * @param message_id Used to search up the message.
      * @return Deleted message or null.
      */
     public Message deleteMessageById(int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
-        Message deletedMessage = getMessageById(message_id);
-        
-        try {
-            String sql = "DELETE FROM message WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT " + COLUMNS + " FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setInt(1, message_id);
             
-            preparedStatement.executeUpdate();
-
-            return deletedMessage;
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if(rs.next()){
+                    return mapRow(rs);
+                }
+            }
         } catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            DELETE_MESSAGE_BY_ID.recordSince(start);
         }
 
         return null;
@@ -127,25 +279,28 @@ public class MessageDAO {
     /**
      * Update a message_text in the database based on the message_id;.
      * If there is no matching message, return null.
+     * One statement: the UPDATE runs inside a SELECT on H2's FINAL TABLE delta table, so the row
+     * returned is the row as this update left it.
      * @param m Message to update.
      * @return Fully updated message or null.
      */
     public Message updateMessageById(Message m) {
-        Connection connection = ConnectionUtil.getConnection();
-        
-        try {
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT " + COLUMNS + " FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setString(1, m.getMessage_text());
             preparedStatement.setInt(2, m.getMessage_id());
             
-            preparedStatement.executeUpdate();
-
-            Message updatedMessage = getMessageById(m.getMessage_id());
-
-            return updatedMessage;
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if(rs.next()){
+                    return mapRow(rs);
+                }
+            }
         } catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            UPDATE_MESSAGE_BY_ID.recordSince(start);
         }
 
         return null;
@@ -156,25 +311,74 @@ public class MessageDAO {
      * @return List of all the messages.
      */
     public List<Message> getAllMessagesFromAccountId(int accId) {
-        Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
-        try {
-            String sql = "SELECT * FROM message WHERE posted_by = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT " + COLUMNS + " FROM message WHERE posted_by = ?";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 
             preparedStatement.setInt(1, accId);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                Message ms = new Message(rs.getInt("message_id"), 
-                                        rs.getInt("posted_by"),
-                                        rs.getString("message_text"),
-                                        rs.getLong("time_posted_epoch"));
-                messages.add(ms);
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    Message ms = mapRow(rs);
+                    messages.add(ms);
+                }
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            GET_ALL_MESSAGES_FROM_ACCOUNT_ID.recordSince(start);
         }
         return messages;
     }
+
+    /**
+     * Get one page of an account's messages, newest first (time_posted_epoch, then message_id, descending),
+     * starting after a cursor.
+     * The ORDER BY matches the (posted_by, time_posted_epoch desc, message_id desc) index from V3 including
+     * posted_by, and the time_posted_epoch <= ? condition starts the index range at the cursor, so H2 reads
+     * only the rows of the page no matter how many messages the account has.
+     * @param accId Account whose messages are returned.
+     * @param beforeTime time_posted_epoch of the last message of the previous page, Long.MAX_VALUE for the first page.
+     * @param beforeId message_id of the last message of the previous page, Integer.MAX_VALUE for the first page.
+     * @param limit Maximum number of messages in the page.
+     * @return List of messages, empty if there are no more.
+     */
+    public List<Message> getFeedPage(int accId, long beforeTime, int beforeId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        String sql = "SELECT " + COLUMNS + " FROM message"
+                + " WHERE posted_by = ? AND time_posted_epoch <= ? AND (time_posted_epoch < ? OR message_id < ?)"
+                + " ORDER BY posted_by, time_posted_epoch DESC, message_id DESC LIMIT ?";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, accId);
+            preparedStatement.setLong(2, beforeTime);
+            preparedStatement.setLong(3, beforeTime);
+            preparedStatement.setInt(4, beforeId);
+            preparedStatement.setInt(5, limit);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    messages.add(mapRow(rs));
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            GET_FEED_PAGE.recordSince(start);
+        }
+        return messages;
+    }
+
+    /**
+     * Turns the current row of a query that selected COLUMNS into a Message.
+     * @param rs ResultSet positioned on a row.
+     * @return Message
+     * @throws SQLException
+     */
+    private static Message mapRow(ResultSet rs) throws SQLException {
+        return new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4));
+    }
 }
@@ -0,0 +1,184 @@
+package DAO;
+
+import Util.ConnectionUtil;
+import Util.Metrics;
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The #tags and @mentions extracted from message_text.
+ */
+public class TagDAO {
+    // Latency of each query, in db_query_seconds on /metrics.
+    private static final Metrics.Timer SAVE_TAGS_AND_MENTIONS = Metrics.timer("db_query_seconds", "query", "TagDAO.saveTagsAndMentions");
+    private static final Metrics.Timer GET_TAG_PAGE = Metrics.timer("db_query_seconds", "query", "TagDAO.getTagPage");
+    private static final Metrics.Timer GET_MENTION_PAGE = Metrics.timer("db_query_seconds", "query", "TagDAO.getMentionPage");
+
+    /**
+     * Save the tags and mentions of messages, in one transaction.
+     *
+     * Each message's row is locked first and its message_text compared with the caller's. A message that was
+     * deleted, or updated again, since the caller read it is skipped instead of failing the whole batch on the
+     * foreign key. Skipping is safe because the message's rows were removed with it, or the later update saves its
+     * own tags. The lock also makes this wait for a concurrent update of the message, so the tags of an older
+     * text can't be written after those of a newer one.
+     * @param messages Saved messages, including message_id.
+     * @param tags Tags of each message, in the same order.
+     * @param mentions Mentioned account_ids of each message, in the same order.
+     * @param replace true to first remove what was saved for these messages before, when their text was updated.
+     * @return true if everything was saved, false if it failed.
+     */
+    public boolean saveTagsAndMentions(List<Message> messages, List<? extends Collection<String>> tags,
+                                       List<? extends Collection<Integer>> mentions, boolean replace) {
+        String lockMessage = "SELECT message_text FROM message WHERE message_id = ? FOR UPDATE";
+        String deleteTags = "DELETE FROM message_tag WHERE message_id = ?";
+        String deleteMentions = "DELETE FROM message_mention WHERE message_id = ?";
+        String insertTag = "INSERT INTO message_tag (tag, message_id, time_posted_epoch) VALUES (?, ?, ?)";
+        String insertMention = "INSERT INTO message_mention (account_id, message_id, time_posted_epoch) VALUES (?, ?, ?)";
+
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                // Indexes of the messages whose row still has the caller's text.
+                List<Integer> current = new ArrayList<>(messages.size());
+                try (PreparedStatement lockStatement = connection.prepareStatement(lockMessage)) {
+                    for (int i = 0; i < messages.size(); i++) {
+                        lockStatement.setInt(1, messages.get(i).getMessage_id());
+                        try (ResultSet rs = lockStatement.executeQuery()) {
+                            if (rs.next() && rs.getString(1).equals(messages.get(i).getMessage_text())) {
+                                current.add(i);
+                            }
+                        }
+                    }
+                }
+                if (replace) {
+                    try (PreparedStatement tagStatement = connection.prepareStatement(deleteTags);
+                         PreparedStatement mentionStatement = connection.prepareStatement(deleteMentions)) {
+                        for (int i : current) {
+                            Message m = messages.get(i);
+                            tagStatement.setInt(1, m.getMessage_id());
+                            tagStatement.addBatch();
+                            mentionStatement.setInt(1, m.getMessage_id());
+                            mentionStatement.addBatch();
+                        }
+                        tagStatement.executeBatch();
+                        mentionStatement.executeBatch();
+                    }
+                }
+                try (PreparedStatement tagStatement = connection.prepareStatement(insertTag);
+                     PreparedStatement mentionStatement = connection.prepareStatement(insertMention)) {
+                    for (int i : current) {
+                        Message m = messages.get(i);
+                        for (String tag : tags.get(i)) {
+                            tagStatement.setString(1, tag);
+                            tagStatement.setInt(2, m.getMessage_id());
+                            tagStatement.setLong(3, m.getTime_posted_epoch());
+                            tagStatement.addBatch();
+                        }
+                        for (int accountId : mentions.get(i)) {
+                            mentionStatement.setInt(1, accountId);
+                            mentionStatement.setInt(2, m.getMessage_id());
+                            mentionStatement.setLong(3, m.getTime_posted_epoch());
+                            mentionStatement.addBatch();
+                        }
+                    }
+                    tagStatement.executeBatch();
+                    mentionStatement.executeBatch();
+                }
+                connection.commit();
+                return true;
+            } catch(SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            SAVE_TAGS_AND_MENTIONS.recordSince(start);
+        }
+        return false;
+    }
+
+    /**
+     * Get one page of the messages with a tag, newest first (time_posted_epoch, then message_id, descending),
+     * starting after a cursor. Reads the (tag, time_posted_epoch desc, message_id desc) index in order.
+     * @param tag Lowercase tag without the #.
+     * @param beforeTime time_posted_epoch of the last message of the previous page, Long.MAX_VALUE for the first page.
+     * @param beforeId message_id of the last message of the previous page, Integer.MAX_VALUE for the first page.
+     * @param limit Maximum number of messages in the page.
+     * @return List of messages, empty if there are no more.
+     */
+    public List<Message> getTagPage(String tag, long beforeTime, int beforeId, int limit) {
+        String sql = "SELECT m.message_id, m.posted_by, m.message_text, m.time_posted_epoch"
+                + " FROM message_tag t JOIN message m ON m.message_id = t.message_id"
+                + " WHERE t.tag = ? AND t.time_posted_epoch <= ? AND (t.time_posted_epoch < ? OR t.message_id < ?)"
+                + " ORDER BY t.tag, t.time_posted_epoch DESC, t.message_id DESC LIMIT ?";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setString(1, tag);
+            return queryPage(preparedStatement, beforeTime, beforeId, limit);
+        } catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            GET_TAG_PAGE.recordSince(start);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Get one page of the messages that mention an account, newest first, starting after a cursor.
+     * Reads the (account_id, time_posted_epoch desc, message_id desc) index in order.
+     * @param accountId Mentioned account.
+     * @param beforeTime time_posted_epoch of the last message of the previous page, Long.MAX_VALUE for the first page.
+     * @param beforeId message_id of the last message of the previous page, Integer.MAX_VALUE for the first page.
+     * @param limit Maximum number of messages in the page.
+     * @return List of messages, empty if there are no more.
+     */
+    public List<Message> getMentionPage(int accountId, long beforeTime, int beforeId, int limit) {
+        String sql = "SELECT m.message_id, m.posted_by, m.message_text, m.time_posted_epoch"
+                + " FROM message_mention t JOIN message m ON m.message_id = t.message_id"
+                + " WHERE t.account_id = ? AND t.time_posted_epoch <= ? AND (t.time_posted_epoch < ? OR t.message_id < ?)"
+                + " ORDER BY t.account_id, t.time_posted_epoch DESC, t.message_id DESC LIMIT ?";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, accountId);
+            return queryPage(preparedStatement, beforeTime, beforeId, limit);
+        } catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            GET_MENTION_PAGE.recordSince(start);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Sets the cursor and limit parameters, 2 to 5, of a page query and runs it.
+     * @return Messages of the page.
+     * @throws SQLException
+     */
+    private static List<Message> queryPage(PreparedStatement preparedStatement, long beforeTime, int beforeId,
+                                           int limit) throws SQLException {
+        preparedStatement.setLong(2, beforeTime);
+        preparedStatement.setLong(3, beforeTime);
+        preparedStatement.setInt(4, beforeId);
+        preparedStatement.setInt(5, limit);
+
+        List<Message> messages = new ArrayList<>();
+        try (ResultSet rs = preparedStatement.executeQuery()) {
+            while(rs.next()){
+                messages.add(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,100 @@
+package DAO;
+
+import Util.ConnectionUtil;
+import Util.Metrics;
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Precomputed home timelines: the messages of the accounts someone follows, newest first.
+ */
+public class TimelineDAO {
+    // Latency of each query, in db_query_seconds on /metrics.
+    private static final Metrics.Timer FAN_OUT = Metrics.timer("db_query_seconds", "query", "TimelineDAO.fanOut");
+    private static final Metrics.Timer GET_HOME_PAGE = Metrics.timer("db_query_seconds", "query", "TimelineDAO.getHomePage");
+
+    /**
+     * Add new messages to the home timeline of every follower of their poster, in one transaction.
+     * One statement per message copies it to all followers at once.
+     * @param messages Saved messages, including message_id.
+     * @return true if every message was added, false if it failed.
+     */
+    public boolean fanOut(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return true;
+        }
+        // MERGE, someone who follows the poster while this runs may already have the message from the backfill.
+        String sql = "MERGE INTO home_timeline (owner_id, message_id, posted_by, time_posted_epoch) KEY (owner_id, message_id)"
+                + " SELECT follower_id, ?, ?, ? FROM follow WHERE followee_id = ?";
+
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                for (Message m : messages) {
+                    preparedStatement.setInt(1, m.getMessage_id());
+                    preparedStatement.setInt(2, m.getPosted_by());
+                    preparedStatement.setLong(3, m.getTime_posted_epoch());
+                    preparedStatement.setInt(4, m.getPosted_by());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                connection.commit();
+                return true;
+            } catch(SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            FAN_OUT.recordSince(start);
+        }
+        return false;
+    }
+
+    /**
+     * Get one page of an account's home timeline, newest first (time_posted_epoch, then message_id, descending),
+     * starting after a cursor.
+     * The ORDER BY matches the (owner_id, time_posted_epoch desc, message_id desc) index, so H2 reads only the
+     * rows of the page and looks each message up by its primary key, however long the timeline is.
+     * @param ownerId Account whose home timeline is returned.
+     * @param beforeTime time_posted_epoch of the last message of the previous page, Long.MAX_VALUE for the first page.
+     * @param beforeId message_id of the last message of the previous page, Integer.MAX_VALUE for the first page.
+     * @param limit Maximum number of messages in the page.
+     * @return List of messages, empty if there are no more.
+     */
+    public List<Message> getHomePage(int ownerId, long beforeTime, int beforeId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        String sql = "SELECT m.message_id, m.posted_by, m.message_text, m.time_posted_epoch"
+                + " FROM home_timeline t JOIN message m ON m.message_id = t.message_id"
+                + " WHERE t.owner_id = ? AND t.time_posted_epoch <= ? AND (t.time_posted_epoch < ? OR t.message_id < ?)"
+                + " ORDER BY t.owner_id, t.time_posted_epoch DESC, t.message_id DESC LIMIT ?";
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, ownerId);
+            preparedStatement.setLong(2, beforeTime);
+            preparedStatement.setLong(3, beforeTime);
+            preparedStatement.setInt(4, beforeId);
+            preparedStatement.setInt(5, limit);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    messages.add(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            GET_HOME_PAGE.recordSince(start);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,103 @@
+package Model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * This is a class that models the outcome of one message in a batch request.
+ * Either message is set (the message was saved, including its message_id) or error is set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageResult {
+    /**
+     * Position of the message in the request array, starting at 0.
+     */
+    public int index;
+    /**
+     * The saved message, including the message_id generated by the database. Null if it was rejected.
+     */
+    public Message message;
+    /**
+     * Why the message was rejected. Null if it was saved.
+     */
+    public String error;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageResult(){
+    }
+    /**
+     * @param index
+     * @param message
+     * @param error
+     */
+    public MessageResult(int index, Message message, String error) {
+        this.index = index;
+        this.message = message;
+        this.error = error;
+    }
+    /**
+     * @param index
+     * @param message The saved message.
+     * @return A successful result.
+     */
+    public static MessageResult saved(int index, Message message) {
+        return new MessageResult(index, message, null);
+    }
+    /**
+     * @param index
+     * @param error Why the message was rejected.
+     * @return A failed result.
+     */
+    public static MessageResult rejected(int index, String error) {
+        return new MessageResult(index, null, error);
+    }
+    /**
+     * @return index
+     */
+    public int getIndex() {
+        return index;
+    }
+    /**
+     * @param index
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    /**
+     * @return message
+     */
+    public Message getMessage() {
+        return message;
+    }
+    /**
+     * @param message
+     */
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+    /**
+     * @return error
+     */
+    public String getError() {
+        return error;
+    }
+    /**
+     * @param error
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageResult{" +
+                "index=" + index +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,64 @@
+package Model;
+
+/**
+ * This is a class that models how often a #tag was used recently, for GET /tags/trending.
+ */
+public class TagCount {
+    /**
+     * The tag, lowercase and without the #.
+     */
+    public String tag;
+    /**
+     * Number of messages that used the tag in the trending window.
+     */
+    public long count;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public TagCount(){
+    }
+    /**
+     * @param tag
+     * @param count
+     */
+    public TagCount(String tag, long count) {
+        this.tag = tag;
+        this.count = count;
+    }
+    /**
+     * @return tag
+     */
+    public String getTag() {
+        return tag;
+    }
+    /**
+     * @param tag
+     */
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+    /**
+     * @return count
+     */
+    public long getCount() {
+        return count;
+    }
+    /**
+     * @param count
+     */
+    public void setCount(long count) {
+        this.count = count;
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "TagCount{" +
+                "tag='" + tag + '\'' +
+                ", count=" + count +
+                '}';
+    }
+}
@@ -0,0 +1,120 @@
+package Service;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import DAO.AccountDAO;
+import Model.Account;
+
+/**
+ * In-memory index of accounts by account_id and by username, in front of AccountDAO.
+ * Accounts are never deleted, so once an account has been seen it stays valid. Accounts are loaded
+ * lazily on the first lookup (or all at once with warm()), and new accounts are added as they are inserted.
+ * Lookups for accounts that don't exist are not cached, they always go to the database.
+ *
+ * One index is shared by AccountService and MessageService so both see the same accounts.
+ */
+public class AccountIndex {
+    private final AccountDAO accDAO;
+    private final ConcurrentHashMap<Integer, Account> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Account> byUsername = new ConcurrentHashMap<>();
+
+    /**
+     * @param accDAO DAO used on a miss and for inserts.
+     */
+    public AccountIndex(AccountDAO accDAO) {
+        this.accDAO = accDAO;
+    }
+
+    /**
+     * Load every account into the index, so later lookups never touch the database.
+     * @return Number of accounts loaded.
+     */
+    public int warm() {
+        List<Account> accounts = accDAO.getAllAccounts();
+        for (Account acc : accounts) {
+            put(acc);
+        }
+        return accounts.size();
+    }
+
+    /**
+     * @param accountId
+     * @return The account or null if it doesn't exist.
+     */
+    public Account getById(int accountId) {
+        Account acc = byId.get(accountId);
+        if (acc == null) {
+            acc = accDAO.getAccountByID(accountId);
+            if (acc != null) {
+                put(acc);
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * @param username
+     * @return The account or null if it doesn't exist.
+     */
+    public Account getByUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        Account acc = byUsername.get(username);
+        if (acc == null) {
+            acc = accDAO.getAccountByUsername(username);
+            if (acc != null) {
+                put(acc);
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * @param accountId
+     * @return True if the account exists.
+     */
+    public boolean exists(int accountId) {
+        return getById(accountId) != null;
+    }
+
+    /**
+     * Insert a new account in the database and index it.
+     * @param acc Account without account_id.
+     * @return The account including its account_id, or null if the insert failed.
+     */
+    public Account insert(Account acc) {
+        Account inserted = accDAO.insertAccount(acc);
+        if (inserted != null) {
+            put(inserted);
+        }
+        return inserted;
+    }
+
+    /**
+     * Replace the stored password of an account in the database and the index.
+     * @param acc Indexed account.
+     * @param password New stored password hash.
+     * @return true if it was saved.
+     */
+    public boolean updatePassword(Account acc, String password) {
+        if (!accDAO.updatePassword(acc.getAccount_id(), password)) {
+            return false;
+        }
+        put(new Account(acc.getAccount_id(), acc.getUsername(), password));
+        return true;
+    }
+
+    /**
+     * @return Number of accounts in the index.
+     */
+    public int size() {
+        return byId.size();
+    }
+
+    private void put(Account acc) {
+        byId.put(acc.getAccount_id(), acc);
+        byUsername.put(acc.getUsername(), acc);
+    }
+}
@@ -1,17 +1,32 @@
 package Service;
 
+import java.util.concurrent.CompletableFuture;
+
 import DAO.AccountDAO;
 import Model.Account;
+import Util.DbExecutor;
+import Util.PasswordHasher;
 
 
 public class AccountService {
-    private AccountDAO accDAO;
+    /**
+     * Runs password hashing, which is CPU bound and slow on purpose. One thread per core by default,
+     * and a short queue: once it is full, registrations and logins are answered with 503 instead of piling up.
+     */
+    private static final DbExecutor sharedHashExecutor = new DbExecutor(
+            Integer.getInteger("socialmedia.password.threads", Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger("socialmedia.password.queueCapacity", 100), "password-hash");
+
+    private AccountIndex accounts;
+    private DbExecutor dbExecutor;
+    private PasswordHasher hasher;
+    private DbExecutor hashExecutor;
 
     /**
      * Creation of accountDAO which will create and use DAO's.
      */
     public AccountService(){
-        accDAO = new AccountDAO();
+        this(new AccountDAO());
     }
     
     /**
@@ -19,7 +34,36 @@ public class AccountService {
      * @param account 
      */
     public AccountService(AccountDAO account) {
-        this.accDAO = account;
+        this(new AccountIndex(account));
+    }
+
+    /**
+     * @param accounts Account index, shared with MessageService.
+     */
+    public AccountService(AccountIndex accounts) {
+        this(accounts, DbExecutor.getShared());
+    }
+
+    /**
+     * @param accounts Account index, shared with MessageService.
+     * @param dbExecutor Executor the async methods run their database work on.
+     */
+    public AccountService(AccountIndex accounts, DbExecutor dbExecutor) {
+        this(accounts, dbExecutor, new PasswordHasher(Integer.getInteger("socialmedia.password.iterations", 600_000)),
+                sharedHashExecutor);
+    }
+
+    /**
+     * @param accounts Account index, shared with MessageService.
+     * @param dbExecutor Executor the async methods run their database work on.
+     * @param hasher Hashes new passwords and checks them at login.
+     * @param hashExecutor Executor the async methods hash and check passwords on.
+     */
+    public AccountService(AccountIndex accounts, DbExecutor dbExecutor, PasswordHasher hasher, DbExecutor hashExecutor) {
+        this.accounts = accounts;
+        this.dbExecutor = dbExecutor;
+        this.hasher = hasher;
+        this.hashExecutor = hashExecutor;
     }
 
     /**
@@ -27,26 +71,62 @@ public class AccountService {
      * @return Return an account
      */
     public Account getAccountByUsername(String user) {
-        return accDAO.getAccountByUsername(user);
+        return accounts.getByUsername(user);
     }
 
     /**
      * Account will be provided. 
      * Username can't be blank, Password >= 4 Characters, Account username is unique.
+     * Only a salted hash of the password is stored.
      * @param acc a account object
-     * @return an account
+     * @return an account, with the password as it was given
      */
     public Account addAccount (Account acc) {
-        // Checks for restrictions on account creation
-        if (acc.getUsername() == "") {
+        if (!canAdd(acc)) {
             return null;
+        }
+        return insert(acc, hasher.hash(acc.getPassword()));
+    }
+
+    /**
+     * Async addAccount. The password is hashed on the password executor, the lookups and the insert run on
+     * the database executor.
+     * @param acc a account object
+     * @return Completes with the account, or null if it can't be created.
+     */
+    public CompletableFuture<Account> addAccountAsync(Account acc) {
+        return dbExecutor.supply(() -> canAdd(acc))
+                .thenCompose(ok -> !ok
+                        ? CompletableFuture.completedFuture(null)
+                        : hashExecutor.supply(() -> hasher.hash(acc.getPassword()))
+                                .thenCompose(hash -> dbExecutor.supply(() -> insert(acc, hash))));
+    }
+
+    /**
+     * Checks for restrictions on account creation.
+     * @param acc a account object
+     * @return true if the account may be created.
+     */
+    private boolean canAdd(Account acc) {
+        if (acc.getUsername() == "") {
+            return false;
         } else if (acc.getPassword().length() < 4) {
-            return null; 
-        } else if (accDAO.getAccountByUsername(acc.getUsername()) != null) {
-            return null;
+            return false;
         }
+        return accounts.getByUsername(acc.getUsername()) == null;
+    }
 
-        return accDAO.insertAccount(acc);
+    /**
+     * @param acc a account object
+     * @param hash Hash of its password.
+     * @return The saved account with the password as it was given, or null if it couldn't be saved.
+     */
+    private Account insert(Account acc, String hash) {
+        Account inserted = accounts.insert(new Account(acc.getUsername(), hash));
+        if (inserted == null) {
+            return null;
+        }
+        return new Account(inserted.getAccount_id(), acc.getUsername(), acc.getPassword());
     }
 
     /**
@@ -62,11 +142,64 @@ public class AccountService {
             // No account by that username exists
             return null;
         }
-        if (!uncheckedAcc.getPassword().equals(fullAcc.getPassword())) {
+        String rehash = check(uncheckedAcc, fullAcc);
+        if (rehash == null) {
             return null;
         }
+        return loggedIn(uncheckedAcc, fullAcc, rehash);
+    }
+
+    /**
+     * Async login. The password is checked on the password executor, the lookup and an upgraded hash are
+     * handled on the database executor.
+     * @param uncheckedAcc Account Object, Doesn't contain account_id.
+     * @return Completes with the account with account_id, or null.
+     */
+    public CompletableFuture<Account> loginAsync(Account uncheckedAcc) {
+        return dbExecutor.supply(() -> getAccountByUsername(uncheckedAcc.getUsername()))
+                .thenCompose(fullAcc -> fullAcc == null
+                        ? CompletableFuture.completedFuture(null)
+                        : hashExecutor.supply(() -> check(uncheckedAcc, fullAcc)).thenCompose(rehash -> {
+                            if (rehash == null) {
+                                return CompletableFuture.completedFuture(null);
+                            } else if (rehash.isEmpty()) {
+                                return CompletableFuture.completedFuture(loggedIn(uncheckedAcc, fullAcc, rehash));
+                            }
+                            return dbExecutor.supply(() -> loggedIn(uncheckedAcc, fullAcc, rehash));
+                        }));
+    }
 
-        // Should not be null and passwords equal
-        return fullAcc;
+    /**
+     * Checks the password, and hashes it again if the stored one is plaintext or uses an old work factor.
+     * @param uncheckedAcc Account from the request.
+     * @param fullAcc Stored account.
+     * @return null if the password is wrong, otherwise the new hash to store or "" if the stored one is current.
+     */
+    private String check(Account uncheckedAcc, Account fullAcc) {
+        if (!hasher.verify(uncheckedAcc.getPassword(), fullAcc.getPassword())) {
+            return null;
+        }
+        return hasher.needsRehash(fullAcc.getPassword()) ? hasher.hash(uncheckedAcc.getPassword()) : "";
+    }
+
+    /**
+     * Stores an upgraded hash. The login succeeds even if that fails, the next one tries again.
+     * @param uncheckedAcc Account from the request.
+     * @param fullAcc Stored account.
+     * @param rehash New hash to store, or "" for none.
+     * @return The account with account_id and the password as it was given.
+     */
+    private Account loggedIn(Account uncheckedAcc, Account fullAcc, String rehash) {
+        if (!rehash.isEmpty()) {
+            accounts.updatePassword(fullAcc, rehash);
+        }
+        return new Account(fullAcc.getAccount_id(), fullAcc.getUsername(), uncheckedAcc.getPassword());
+    }
+
+    /**
+     * @return Executor the async methods hash and check passwords on.
+     */
+    public DbExecutor getHashExecutor() {
+        return hashExecutor;
     }
 }
@@ -0,0 +1,225 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+/**
+ * Group commit for message inserts.
+ * Callers queue their message and wait, a single writer thread collects queued messages until it has
+ * maxBatch of them or maxDelayMs has passed since the first one arrived, then saves them all with one
+ * MessageDAO.addMessages transaction. Every caller gets its own message back (with its message_id) only
+ * after that transaction has committed, so durability is the same as a single insert.
+ *
+ * Work that follows a commit (caches, fan-out) is handed the whole batch at once, after the callers have been
+ * answered, and the writer doesn't wait for it. Its failures are logged: the messages are saved either way, and
+ * failing the callers would only make them retry and save duplicates.
+ *
+ * A maxDelayMs of 0 doesn't wait at all, it only batches what is already queued.
+ */
+public class GroupCommitter {
+    private static final Logger LOG = LoggerFactory.getLogger(GroupCommitter.class);
+
+    private final MessageDAO messageDAO;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue;
+    private final Function<List<Message>, CompletableFuture<?>> afterCommit;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Queued by close() to tell the writer thread to finish.
+    private static final Pending STOP = new Pending(null);
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+
+    /**
+     * @param messageDAO DAO that saves each batch.
+     * @param maxBatch Most messages saved in one transaction.
+     * @param maxDelayMs Longest a message waits for others to join its batch.
+     * @param queueCapacity Callers block once this many messages are waiting.
+     */
+    public GroupCommitter(MessageDAO messageDAO, int maxBatch, long maxDelayMs, int queueCapacity) {
+        this(messageDAO, maxBatch, maxDelayMs, queueCapacity, saved -> CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * @param messageDAO DAO that saves each batch.
+     * @param maxBatch Most messages saved in one transaction.
+     * @param maxDelayMs Longest a message waits for others to join its batch.
+     * @param queueCapacity Callers block once this many messages are waiting.
+     * @param afterCommit Called on the writer thread with each committed batch once its callers have their
+     * message, should start its work elsewhere. A failure, thrown or of the returned future, is logged.
+     */
+    public GroupCommitter(MessageDAO messageDAO, int maxBatch, long maxDelayMs, int queueCapacity,
+                          Function<List<Message>, CompletableFuture<?>> afterCommit) {
+        this.messageDAO = messageDAO;
+        this.afterCommit = afterCommit;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::run, "message-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue a message to be saved with the next batch.
+     * @param m Message without message_id, already validated.
+     * @return Completes with the saved message once its batch has committed, or with null if the batch failed.
+     */
+    public CompletableFuture<Message> submit(Message m) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Group commit has been shut down."));
+        }
+        Pending p = new Pending(m);
+        try {
+            queue.put(p);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            p.result.completeExceptionally(e);
+        }
+        // Raced with close() after the writer's final drain, nobody will save it.
+        if (!running && !writer.isAlive() && queue.remove(p)) {
+            p.result.completeExceptionally(new IllegalStateException("Group commit has been shut down."));
+        }
+        return p.result;
+    }
+
+    /**
+     * Stop the writer thread after saving what is still queued.
+     */
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // A marker instead of interrupt(), interrupting a thread inside H2 can close the database file.
+        try {
+            queue.put(STOP);
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Number of transactions committed.
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return Number of messages saved.
+     */
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                Pending first = queue.take();
+                if (first == STOP) {
+                    break;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    } else if (next == STOP) {
+                        stop = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                stop = true;
+            }
+            flush(batch);
+        }
+
+        // Anything that slipped in around close() is still saved.
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.remove(STOP);
+        for (int from = 0; from < remaining.size(); from += maxBatch) {
+            flush(new ArrayList<>(remaining.subList(from, Math.min(from + maxBatch, remaining.size()))));
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Message> toSave = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            toSave.add(p.message);
+        }
+
+        List<Message> saved;
+        try {
+            saved = messageDAO.addMessages(toSave);
+        } catch (RuntimeException e) {
+            for (Pending p : batch) {
+                p.result.completeExceptionally(e);
+            }
+            batch.clear();
+            return;
+        }
+
+        if (saved == null) {
+            for (Pending p : batch) {
+                p.result.complete(null);
+            }
+            batch.clear();
+            return;
+        }
+        batches.increment();
+        messages.add(saved.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(saved.get(i));
+        }
+        batch.clear();
+        try {
+            afterCommit.apply(saved).whenComplete((ignored, e) -> {
+                if (e != null) {
+                    LOG.error("Work after a group commit of {} messages failed.", saved.size(), e);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOG.error("Work after a group commit of {} messages failed.", saved.size(), e);
+        }
+    }
+
+    /**
+     * A queued message and the future its caller is waiting on.
+     */
+    private static class Pending {
+        final Message message;
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        Pending(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -2,22 +2,167 @@ package Service;
 
 import DAO.MessageDAO;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 
 import DAO.AccountDAO;
 import Model.Message;
+import Model.MessageResult;
+import Util.DbExecutor;
 
 
 public class MessageService {
     private MessageDAO messageDAO;
-    private AccountDAO accDAO;
+    private AccountIndex accounts;
+    private DbExecutor dbExecutor;
+
+    /**
+     * Read-through cache of messages by message_id. An empty Optional caches a missing message,
+     * those expire sooner than real messages. Every update and delete goes through this service and
+     * invalidates the entry after the database write, so the next read loads whatever the database kept.
+     * Writing the new value into the cache instead could let a slower write overwrite a newer one.
+     * Rows read by other queries are only cached with cacheUnchanged, which skips rows that may have been
+     * updated or deleted since the query started.
+     */
+    private final LoadingCache<Integer, Optional<Message>> messageCache;
+
+    /**
+     * Numbers the updates and deletes. lastWrite holds the number of the last one per message_id stripe
+     * (message_id % 1024), set after the database write and before the cache entry is invalidated.
+     */
+    private final AtomicLong writeSeq = new AtomicLong();
+    private final AtomicLongArray lastWrite = new AtomicLongArray(1024);
+
+    /**
+     * Batches concurrent createMessage inserts into shared transactions.
+     * Null unless -Dsocialmedia.groupCommit.enabled=true.
+     */
+    private final GroupCommitter groupCommitter;
+
+    /**
+     * Copies saved messages into the home timelines of the poster's followers. Null if there are no home timelines.
+     */
+    private final TimelineService timelines;
+
+    /**
+     * Saves the #tags and @mentions of saved messages. Null if they aren't extracted.
+     */
+    private final TagService tags;
+
+    /**
+     * message_ids of each account's newest messages, so feed pages can be served from memory.
+     * Null if -Dsocialmedia.recent.depth=0.
+     */
+    private final RecentMessageIndex recentMessages;
+    private final int recentDepth;
+    private final LongAdder recentHits = new LongAdder();
+    private final LongAdder recentMisses = new LongAdder();
+
+    /**
+     * Full-text index over message_text, built on the first search.
+     */
+    private final SearchIndex searchIndex;
 
     /**
      * Creation of messageDAO which will create and use DAO's.
      */
     public MessageService(){
-        messageDAO = new MessageDAO();
-        accDAO = new AccountDAO(); // Used to access accounts
+        this(new MessageDAO(), new AccountIndex(new AccountDAO()));
+    }
+
+    /**
+     * @param messageDAO DAO used for messages.
+     * @param accounts Account index used to check that the poster exists, shared with AccountService.
+     */
+    public MessageService(MessageDAO messageDAO, AccountIndex accounts) {
+        this(messageDAO, accounts, DbExecutor.getShared());
+    }
+
+    /**
+     * @param messageDAO DAO used for messages.
+     * @param accounts Account index used to check that the poster exists, shared with AccountService.
+     * @param dbExecutor Executor the async methods run their database work on.
+     */
+    public MessageService(MessageDAO messageDAO, AccountIndex accounts, DbExecutor dbExecutor) {
+        this(messageDAO, accounts, dbExecutor, null);
+    }
+
+    /**
+     * @param messageDAO DAO used for messages.
+     * @param accounts Account index used to check that the poster exists, shared with AccountService.
+     * @param dbExecutor Executor the async methods run their database work on.
+     * @param timelines Fans saved messages out to home timelines, or null for none.
+     */
+    public MessageService(MessageDAO messageDAO, AccountIndex accounts, DbExecutor dbExecutor, TimelineService timelines) {
+        this(messageDAO, accounts, dbExecutor, timelines, null);
+    }
+
+    /**
+     * @param messageDAO DAO used for messages.
+     * @param accounts Account index used to check that the poster exists, shared with AccountService.
+     * @param dbExecutor Executor the async methods run their database work on.
+     * @param timelines Fans saved messages out to home timelines, or null for none.
+     * @param tags Saves the tags and mentions of saved and updated messages, or null for none.
+     */
+    public MessageService(MessageDAO messageDAO, AccountIndex accounts, DbExecutor dbExecutor, TimelineService timelines,
+                          TagService tags) {
+        this.messageDAO = messageDAO;
+        this.timelines = timelines;
+        this.tags = tags;
+        this.accounts = accounts; // Used to access accounts
+        this.dbExecutor = dbExecutor;
+
+        Duration ttl = Duration.ofSeconds(Long.getLong("socialmedia.cache.messages.ttlSeconds", 300));
+        Duration negativeTtl = Duration.ofSeconds(Long.getLong("socialmedia.cache.messages.negativeTtlSeconds", 30));
+        this.messageCache = Caffeine.newBuilder()
+                .maximumSize(Long.getLong("socialmedia.cache.messages.maxSize", 100_000))
+                .expireAfter(new WriteExpiry(ttl, negativeTtl))
+                .recordStats()
+                .build(id -> Optional.ofNullable(messageDAO.getMessageById(id)));
+
+        if (Boolean.getBoolean("socialmedia.groupCommit.enabled")) {
+            this.groupCommitter = new GroupCommitter(messageDAO,
+                    Integer.getInteger("socialmedia.groupCommit.maxBatch", 256),
+                    Long.getLong("socialmedia.groupCommit.maxDelayMs", 1),
+                    Integer.getInteger("socialmedia.groupCommit.queueCapacity", 10_000),
+                    this::afterGroupCommit);
+        } else {
+            this.groupCommitter = null;
+        }
+
+        this.searchIndex = new SearchIndex(messageDAO);
+
+        this.recentDepth = Integer.getInteger("socialmedia.recent.depth", 64);
+        if (recentDepth > 0) {
+            this.recentMessages = new RecentMessageIndex(recentDepth,
+                    Long.getLong("socialmedia.recent.maxEntries", 1_000_000), this::loadRecentMessages);
+        } else {
+            this.recentMessages = null;
+        }
+    }
+
+    /**
+     * Stop background work. Messages waiting for a group commit are still saved.
+     */
+    public void close() {
+        if (groupCommitter != null) {
+            groupCommitter.close();
+        }
     }
 
     /**
@@ -28,17 +173,149 @@ public class MessageService {
      * @return A message object containing message_id.
      */
     public Message createMessage(Message m) {
-        if (m.getMessage_text().equals("")) {
-            return null;
-        } else if (!(m.message_text.length() < 255)) {
+        if (validateNewMessage(m) != null) {
             return null;
         }
 
-        if (accDAO.getAccountByID(m.getPosted_by()) == null) {
+        if (groupCommitter != null) {
+            // Waits until the batch holding m has committed, afterGroupCommit runs after.
+            return groupCommitter.submit(m).join();
+        }
+        Message created = messageDAO.addMessage(m);
+        if (created != null) {
+            onCreated(List.of(created));
+        }
+        return created;
+    }
+
+    /**
+     * Async createMessage. With group commit no database thread waits for the batch to commit, and the
+     * fan-out runs once per committed batch on the database executor.
+     * @param m Message object not containing message_id.
+     * @return Completes with the message containing message_id, or null if it is invalid.
+     */
+    public CompletableFuture<Message> createMessageAsync(Message m) {
+        if (groupCommitter == null) {
+            return dbExecutor.supply(() -> createMessage(m));
+        }
+        return dbExecutor.supply(() -> validateNewMessage(m))
+                .thenCompose(error -> error != null
+                        ? CompletableFuture.completedFuture(null)
+                        : groupCommitter.submit(m));
+    }
+
+    /**
+     * Runs onCreated for a group committed batch on the database executor, so the group commit thread can
+     * start on the next batch. The callers already have their messages. If the executor is full it runs on
+     * the group commit thread instead, which slows the writer down rather than losing the fan-out.
+     * @param saved Messages of the batch.
+     * @return Completes once onCreated is done, GroupCommitter logs a failure.
+     */
+    private CompletableFuture<Void> afterGroupCommit(List<Message> saved) {
+        return dbExecutor.supply(() -> {
+            onCreated(saved);
+            return (Void) null;
+        }).exceptionally(e -> {
+            // Only a rejection arrives unwrapped, a failure inside onCreated is a CompletionException.
+            if (!(e instanceof RejectedExecutionException)) {
+                throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+            }
+            onCreated(saved);
             return null;
+        });
+    }
+
+    /**
+     * Drops cached "missing" entries if someone asked for these ids before they existed, adds the
+     * messages to their posters' recent messages and the search index, copies them into the home timelines
+     * of the posters' followers and saves their tags and mentions, with one fan-out and one tag transaction.
+     * With group commit this runs after the callers got their messages, so one may already have been updated
+     * or deleted: the messages aren't put in the cache, the next read loads them.
+     * @param created Saved messages.
+     */
+    private void onCreated(List<Message> created) {
+        for (Message saved : created) {
+            messageCache.invalidate(saved.getMessage_id());
+            if (recentMessages != null) {
+                recentMessages.add(saved);
+            }
+            searchIndex.index(saved);
+        }
+        if (timelines != null) {
+            timelines.fanOut(created);
+        }
+        if (tags != null) {
+            tags.onCreated(created);
+        }
+    }
+
+    /**
+     * Helps create many messages at once, for bulk imports.
+     * Every message is checked with the same rules as createMessage. The valid ones are saved together
+     * in one transaction, the invalid ones are reported and skipped.
+     * @param messages Message objects not containing message_id.
+     * @return One result per message, in request order.
+     */
+    public List<MessageResult> createMessages(List<Message> messages) {
+        MessageResult[] results = new MessageResult[messages.size()];
+        List<Message> valid = new ArrayList<>(messages.size());
+        List<Integer> validIndexes = new ArrayList<>(messages.size());
+
+        for (int i = 0; i < messages.size(); i++) {
+            Message m = messages.get(i);
+            String error = validateNewMessage(m);
+            if (error != null) {
+                results[i] = MessageResult.rejected(i, error);
+            } else {
+                valid.add(m);
+                validIndexes.add(i);
+            }
+        }
+
+        List<Message> created = messageDAO.addMessages(valid);
+        for (int j = 0; j < validIndexes.size(); j++) {
+            int i = validIndexes.get(j);
+            if (created == null) {
+                results[i] = MessageResult.rejected(i, "could not save message");
+            } else {
+                results[i] = MessageResult.saved(i, created.get(j));
+            }
+        }
+        if (created != null) {
+            onCreated(created);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Async createMessages.
+     * @param messages Message objects not containing message_id.
+     * @return Completes with one result per message, in request order.
+     */
+    public CompletableFuture<List<MessageResult>> createMessagesAsync(List<Message> messages) {
+        return dbExecutor.supply(() -> createMessages(messages));
+    }
+
+    /**
+     * Rules for a new message: message_text is not blank, message_text < 255 characters,
+     * posted_by refers to an existing user.
+     * @param m Message to check.
+     * @return Why the message is invalid, or null if it is valid.
+     */
+    private String validateNewMessage(Message m) {
+        if (m == null) {
+            return "message is missing";
+        } else if (m.getMessage_text() == null || m.getMessage_text().equals("")) {
+            return "message_text is blank";
+        } else if (!(m.message_text.length() < 255)) {
+            return "message_text is 255 characters or longer";
         }
 
-        return messageDAO.addMessage(m);
+        // Memory lookup once the account has been seen.
+        if (!accounts.exists(m.getPosted_by())) {
+            return "posted_by does not refer to an existing account";
+        }
+        return null;
     }
 
     /**
@@ -50,11 +327,76 @@ public class MessageService {
     }
 
     /**
-     * Get one message by message_id.
+     * Async getAllMessages.
+     * @return Completes with all messages in a List.
+     */
+    public CompletableFuture<List<Message>> getAllMessagesAsync() {
+        return dbExecutor.supply(this::getAllMessages);
+    }
+
+    /**
+     * Gets one page of messages, ordered by message_id.
+     * @param afterId Cursor, the last message_id of the previous page or 0 for the first page.
+     * @param limit Page size.
+     * @return Messages in the page, empty when there are no more.
+     */
+    public List<Message> getMessagesPage(int afterId, int limit) {
+        return messageDAO.getMessagesAfter(afterId, limit);
+    }
+
+    /**
+     * Async getMessagesPage.
+     * @param afterId Cursor, the last message_id of the previous page or 0 for the first page.
+     * @param limit Page size.
+     * @return Completes with the messages in the page.
+     */
+    public CompletableFuture<List<Message>> getMessagesPageAsync(int afterId, int limit) {
+        return dbExecutor.supply(() -> getMessagesPage(afterId, limit));
+    }
+
+    /**
+     * Streams every message to the consumer without holding them all in memory.
+     * @param consumer Receives each message in message_id order.
+     * @throws IOException if the consumer fails to write a message.
+     */
+    public void streamAllMessages(MessageDAO.MessageConsumer consumer) throws IOException {
+        messageDAO.forEachMessage(consumer);
+    }
+
+    /**
+     * Async streamAllMessages. The consumer is called on a database thread.
+     * @param consumer Receives each message in message_id order.
+     * @return Completes once every message was passed on, fails with UncheckedIOException if the consumer failed.
+     */
+    public CompletableFuture<Void> streamAllMessagesAsync(MessageDAO.MessageConsumer consumer) {
+        return dbExecutor.supply(() -> {
+            try {
+                streamAllMessages(consumer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Get one message by message_id, from the cache when possible.
      * @return One message.
      */
     public Message getOneMessageById(int m) {
-        return messageDAO.getMessageById(m);
+        return messageCache.get(m).orElse(null);
+    }
+
+    /**
+     * Async getOneMessageById. A cached message is returned without going through the database executor.
+     * @return Completes with one message, or null.
+     */
+    public CompletableFuture<Message> getOneMessageByIdAsync(int m) {
+        Optional<Message> cached = messageCache.getIfPresent(m);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.orElse(null));
+        }
+        return dbExecutor.supply(() -> getOneMessageById(m));
     }
 
     /**
@@ -62,7 +404,23 @@ public class MessageService {
      * @return The deleted message.
      */
     public Message deleteOneMessageById(int m) {
-        return messageDAO.deleteMessageById(m);
+        Message deleted = messageDAO.deleteMessageById(m);
+        invalidate(m);
+        if (deleted != null) {
+            if (recentMessages != null) {
+                recentMessages.remove(deleted);
+            }
+            searchIndex.remove(m);
+        }
+        return deleted;
+    }
+
+    /**
+     * Async deleteOneMessageById.
+     * @return Completes with the deleted message, or null.
+     */
+    public CompletableFuture<Message> deleteOneMessageByIdAsync(int m) {
+        return dbExecutor.supply(() -> deleteOneMessageById(m));
     }
 
     /**
@@ -77,7 +435,49 @@ public class MessageService {
             return null;
         }
 
-        return messageDAO.updateMessageById(m);
+        Message updated = messageDAO.updateMessageById(m);
+        invalidate(m.getMessage_id());
+        if (updated != null) {
+            searchIndex.refresh(updated.getMessage_id());
+            if (tags != null) {
+                tags.onUpdated(updated);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Drops a message from the cache after it was updated or deleted, and marks its stripe as written so
+     * cacheUnchanged doesn't put back a copy read before the write.
+     * @param messageId Message that was written.
+     */
+    private void invalidate(int messageId) {
+        lastWrite.accumulateAndGet(messageId & (lastWrite.length() - 1), writeSeq.incrementAndGet(), Math::max);
+        messageCache.invalidate(messageId);
+    }
+
+    /**
+     * Caches messages read by a query, for getRecentPage. A message is skipped if it is already cached, or if
+     * its stripe was updated or deleted since the query started, as the row may be stale. The check and the
+     * put are one atomic step on the entry, so an invalidate either sees the put or the put sees the write.
+     * @param read Messages read by the query.
+     * @param since writeSeq before the query started.
+     */
+    private void cacheUnchanged(List<Message> read, long since) {
+        for (Message m : read) {
+            int id = m.getMessage_id();
+            messageCache.asMap().computeIfAbsent(id,
+                    k -> lastWrite.get(id & (lastWrite.length() - 1)) > since ? null : Optional.of(m));
+        }
+    }
+
+    /**
+     * Async updateMessage.
+     * @param m Updated message text and message id.
+     * @return Completes with the full updated message or null.
+     */
+    public CompletableFuture<Message> updateMessageAsync(Message m) {
+        return dbExecutor.supply(() -> updateMessage(m));
     }
 
     /**
@@ -87,4 +487,200 @@ public class MessageService {
     public List<Message> getAllMessagesFromAccount(int accId) {
         return messageDAO.getAllMessagesFromAccountId(accId);
     }
-}
\ No newline at end of file
+
+    /**
+     * Async getAllMessagesFromAccount.
+     * @return Completes with all messages of the account, or an empty list.
+     */
+    public CompletableFuture<List<Message>> getAllMessagesFromAccountAsync(int accId) {
+        return dbExecutor.supply(() -> getAllMessagesFromAccount(accId));
+    }
+
+    /**
+     * Gets one page of an account's messages, newest first.
+     * @param accId Account whose messages are returned.
+     * @param beforeTime Cursor time_posted_epoch, Long.MAX_VALUE for the first page.
+     * @param beforeId Cursor message_id, Integer.MAX_VALUE for the first page.
+     * @param limit Page size.
+     * @return Messages in the page, empty when there are no more.
+     */
+    public List<Message> getFeedPage(int accId, long beforeTime, int beforeId, int limit) {
+        if (recentMessages == null) {
+            return messageDAO.getFeedPage(accId, beforeTime, beforeId, limit);
+        }
+
+        recentMessages.load(accId);
+        List<Message> page = getRecentPage(accId, beforeTime, beforeId, limit);
+        if (page != null) {
+            recentHits.increment();
+            return page;
+        }
+        recentMisses.increment();
+        long since = writeSeq.get();
+        page = messageDAO.getFeedPage(accId, beforeTime, beforeId, limit);
+        // Messages that expired from the cache are back for the next read of this page.
+        cacheUnchanged(page, since);
+        return page;
+    }
+
+    /**
+     * Async getFeedPage. A page that is in memory is returned without going through the database executor.
+     * @return Completes with the messages in the page.
+     */
+    public CompletableFuture<List<Message>> getFeedPageAsync(int accId, long beforeTime, int beforeId, int limit) {
+        List<Message> page = getRecentPage(accId, beforeTime, beforeId, limit);
+        if (page != null) {
+            recentHits.increment();
+            return CompletableFuture.completedFuture(page);
+        }
+        return dbExecutor.supply(() -> getFeedPage(accId, beforeTime, beforeId, limit));
+    }
+
+    /**
+     * Builds a feed page from the account's recent message_ids and the message cache, without a query.
+     * An update changes only message_text, which the cache already has, so only creates and deletes touch
+     * the recent message_ids.
+     * @return The page, or null if the ids aren't loaded, don't reach back far enough or a message isn't cached.
+     */
+    private List<Message> getRecentPage(int accId, long beforeTime, int beforeId, int limit) {
+        int[] ids = recentMessages == null ? null : recentMessages.page(accId, beforeTime, beforeId, limit);
+        if (ids == null) {
+            return null;
+        }
+        List<Message> page = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Optional<Message> cached = messageCache.getIfPresent(id);
+            if (cached == null || cached.isEmpty()) {
+                return null;
+            }
+            page.add(cached.get());
+        }
+        return page;
+    }
+
+    /**
+     * Reads an account's newest messages for its recent message_ids, and caches them for getRecentPage.
+     * @param accId Account whose messages are loaded.
+     * @return Up to recentDepth messages, newest first.
+     */
+    private List<Message> loadRecentMessages(int accId) {
+        long since = writeSeq.get();
+        List<Message> newest = messageDAO.getFeedPage(accId, Long.MAX_VALUE, Integer.MAX_VALUE, recentDepth);
+        cacheUnchanged(newest, since);
+        return newest;
+    }
+
+    /**
+     * Search message_text for any of the words in the query, best match first (BM25, then newest message_id).
+     * The first search builds the index from every message in the database.
+     * @param query Words to look for.
+     * @param offset Number of best matches to skip.
+     * @param limit Page size.
+     * @return Messages in the page, empty when there are no more.
+     */
+    public List<Message> searchMessages(String query, int offset, int limit) {
+        int[] ids = searchIndex.search(query, offset, limit);
+        List<Message> messages = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Message m = getOneMessageById(id);
+            // Deleted after the search ran.
+            if (m != null) {
+                messages.add(m);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Async searchMessages.
+     * @return Completes with the messages in the page.
+     */
+    public CompletableFuture<List<Message>> searchMessagesAsync(String query, int offset, int limit) {
+        return dbExecutor.supply(() -> searchMessages(query, offset, limit));
+    }
+
+    /**
+     * @return Number of messages in the search index, 0 until the first search.
+     */
+    public int getSearchIndexSize() {
+        return searchIndex.size();
+    }
+
+    /**
+     * @return Hit, miss and eviction counts of the message cache.
+     */
+    public CacheStats getMessageCacheStats() {
+        return messageCache.stats();
+    }
+
+    /**
+     * @return Transactions committed by group commit, 0 when it is disabled.
+     */
+    public long getGroupCommitBatchCount() {
+        return groupCommitter == null ? 0 : groupCommitter.getBatchCount();
+    }
+
+    /**
+     * @return Messages saved by group commit, 0 when it is disabled.
+     */
+    public long getGroupCommitMessageCount() {
+        return groupCommitter == null ? 0 : groupCommitter.getMessageCount();
+    }
+
+    /**
+     * @return Feed pages served from memory.
+     */
+    public long getRecentHitCount() {
+        return recentHits.sum();
+    }
+
+    /**
+     * @return Feed page lookups that had to go to the database, including the first one for an account.
+     */
+    public long getRecentMissCount() {
+        return recentMisses.sum();
+    }
+
+    /**
+     * @return Number of accounts whose recent message_ids are in memory.
+     */
+    public long getRecentAccountCount() {
+        return recentMessages == null ? 0 : recentMessages.getAccountCount();
+    }
+
+    /**
+     * @return Number of entries in the message cache, including cached misses.
+     */
+    public long getMessageCacheSize() {
+        return messageCache.estimatedSize();
+    }
+
+    /**
+     * Expires entries a fixed time after they were written, sooner for cached misses.
+     * Reads don't extend the lifetime.
+     */
+    private static class WriteExpiry implements Expiry<Integer, Optional<Message>> {
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        WriteExpiry(Duration ttl, Duration negativeTtl) {
+            this.ttlNanos = ttl.toNanos();
+            this.negativeTtlNanos = negativeTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(Integer id, Optional<Message> m, long currentTime) {
+            return m.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Integer id, Optional<Message> m, long currentTime, long currentDuration) {
+            return m.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterRead(Integer id, Optional<Message> m, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package Service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import Model.Message;
+
+/**
+ * The message_ids of each account's newest messages, so pages of an account's newest messages can be found
+ * without a query. Each account has a ring buffer of at most depth entries in two primitive arrays, ordered
+ * by time_posted_epoch and message_id. Buffers are loaded with one query on first use and then kept up to
+ * date by MessageService as messages are created and deleted.
+ *
+ * Memory is bounded: buffers are allocated at full depth, and once their total entries would exceed
+ * maxEntries the least recently used accounts are dropped, to be loaded again when they are next read.
+ */
+public class RecentMessageIndex {
+    private final int depth;
+    private final IntFunction<List<Message>> loader;
+    private final Cache<Integer, Ring> rings;
+
+    /**
+     * @param depth Most message_ids kept per account.
+     * @param maxEntries Most message_ids kept over all accounts.
+     * @param loader Loads an account's newest messages, newest first, at most depth of them.
+     */
+    public RecentMessageIndex(int depth, long maxEntries, IntFunction<List<Message>> loader) {
+        this.depth = depth;
+        this.loader = loader;
+        this.rings = Caffeine.newBuilder()
+                .maximumWeight(maxEntries)
+                .weigher((Integer accountId, Ring ring) -> depth)
+                .build();
+    }
+
+    /**
+     * Load an account's buffer if it isn't loaded yet. Runs the loader, so call it on a database thread.
+     * If another thread is already loading the buffer this returns at once, and page() answers null until
+     * that load is done.
+     * @param accountId Account whose newest messages are kept.
+     */
+    public void load(int accountId) {
+        rings.get(accountId, id -> new Ring(depth)).load(accountId, loader);
+    }
+
+    /**
+     * Find one page of an account's messages, newest first, starting after a cursor. Never runs a query.
+     * @param accountId Account whose messages are returned.
+     * @param beforeTime Cursor time_posted_epoch, Long.MAX_VALUE for the first page.
+     * @param beforeId Cursor message_id, Integer.MAX_VALUE for the first page.
+     * @param limit Page size.
+     * @return message_ids of the page, newest first, or null if the buffer isn't loaded or doesn't reach back far enough.
+     */
+    public int[] page(int accountId, long beforeTime, int beforeId, int limit) {
+        Ring ring = rings.getIfPresent(accountId);
+        return ring == null ? null : ring.page(beforeTime, beforeId, limit);
+    }
+
+    /**
+     * Add a saved message to its poster's buffer, if the poster has one.
+     * @param m Saved message, including message_id.
+     */
+    public void add(Message m) {
+        Ring ring = rings.getIfPresent(m.getPosted_by());
+        if (ring != null) {
+            ring.add(m.getTime_posted_epoch(), m.getMessage_id());
+        }
+    }
+
+    /**
+     * Remove a deleted message from its poster's buffer, if the poster has one.
+     * @param m Deleted message.
+     */
+    public void remove(Message m) {
+        Ring ring = rings.getIfPresent(m.getPosted_by());
+        if (ring != null) {
+            ring.remove(m.getMessage_id());
+        }
+    }
+
+    /**
+     * @return Number of accounts with a buffer.
+     */
+    public long getAccountCount() {
+        return rings.estimatedSize();
+    }
+
+    /**
+     * One account's newest messages, oldest at logical position 0 and newest at size - 1.
+     * Logical position i is stored at (start + i) % capacity, so adding a newer message than every other
+     * one, the common case, drops the oldest without moving anything.
+     *
+     * Every message of the account that is newer than the oldest one kept is in the buffer. If complete,
+     * the buffer holds every message of the account.
+     */
+    private static class Ring {
+        private final long[] times;
+        private final int[] ids;
+        private int start;
+        private int size;
+        private boolean complete = true;
+        private boolean loaded;
+        // message_ids removed while the loader runs, its result may still have them. Null when not loading.
+        private Set<Integer> removedDuringLoad;
+
+        Ring(int capacity) {
+            this.times = new long[capacity];
+            this.ids = new int[capacity];
+        }
+
+        /**
+         * Merges in the newest messages from the database. The query runs without holding the lock, so
+         * page(), add() and remove() don't wait for it. Messages added while the query ran are kept, adding
+         * a message twice changes nothing, and messages removed while it ran are left out of its result.
+         */
+        void load(int accountId, IntFunction<List<Message>> loader) {
+            synchronized (this) {
+                if (loaded || removedDuringLoad != null) {
+                    return;
+                }
+                removedDuringLoad = new HashSet<>();
+            }
+            List<Message> newest;
+            try {
+                newest = loader.apply(accountId);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    removedDuringLoad = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                // Oldest first, so each one is appended.
+                for (int i = newest.size() - 1; i >= 0; i--) {
+                    Message m = newest.get(i);
+                    if (!removedDuringLoad.contains(m.getMessage_id())) {
+                        add(m.getTime_posted_epoch(), m.getMessage_id());
+                    }
+                }
+                if (newest.size() >= times.length) {
+                    complete = false;
+                }
+                removedDuringLoad = null;
+                loaded = true;
+            }
+        }
+
+        synchronized int[] page(long beforeTime, int beforeId, int limit) {
+            if (!loaded) {
+                return null;
+            }
+            // Newest first, skipping everything at or after the cursor.
+            int i = size - 1;
+            while (i >= 0 && !isBefore(time(i), id(i), beforeTime, beforeId)) {
+                i--;
+            }
+            int count = Math.min(limit, i + 1);
+            if (count < limit && !complete) {
+                // Older messages of the page were dropped from the buffer.
+                return null;
+            }
+            int[] page = new int[count];
+            for (int j = 0; j < count; j++) {
+                page[j] = id(i - j);
+            }
+            return page;
+        }
+
+        synchronized void add(long time, int id) {
+            if (indexOf(id) >= 0) {
+                return;
+            }
+            // Logical position of the new message: the number of kept messages older than it.
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (isBefore(time(mid), id(mid), time, id)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int pos = low;
+
+            if (pos == 0 && (!complete || size == times.length)) {
+                // Older than everything kept, and there may be messages in between that aren't kept.
+                complete = false;
+                return;
+            }
+            if (size == times.length) {
+                complete = false;
+                start = (start + 1) % times.length;
+                size--;
+                pos--;
+            }
+            for (int i = size; i > pos; i--) {
+                set(i, time(i - 1), id(i - 1));
+            }
+            set(pos, time, id);
+            size++;
+        }
+
+        synchronized void remove(int id) {
+            if (removedDuringLoad != null) {
+                removedDuringLoad.add(id);
+            }
+            int pos = indexOf(id);
+            if (pos < 0) {
+                return;
+            }
+            for (int i = pos; i < size - 1; i++) {
+                set(i, time(i + 1), id(i + 1));
+            }
+            size--;
+        }
+
+        private int indexOf(int id) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (id(i) == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private long time(int i) {
+            return times[(start + i) % times.length];
+        }
+
+        private int id(int i) {
+            return ids[(start + i) % ids.length];
+        }
+
+        private void set(int i, long time, int id) {
+            times[(start + i) % times.length] = time;
+            ids[(start + i) % ids.length] = id;
+        }
+
+        /**
+         * @return true if message (time, id) comes before (otherTime, otherId) in time_posted_epoch, message_id order.
+         */
+        private static boolean isBefore(long time, int id, long otherTime, int otherId) {
+            return time < otherTime || (time == otherTime && id < otherId);
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+/**
+ * In-process inverted index over message_text, ranked with BM25.
+ *
+ * Text is split into lowercase runs of letters and digits. Each version of a message is a document with its
+ * own number, numbers only grow, so postings lists stay sorted by appending. Updating or deleting a message
+ * marks its current document dead instead of editing postings; once half the documents are dead the postings
+ * are rewritten without them.
+ *
+ * The index is built on the first search by streaming the message table. Creates, updates and deletes that
+ * happen while it is being built are queued and applied once the scan is done, so none are lost. If the scan
+ * fails the partial index is dropped and the search fails, the next search builds it again.
+ *
+ * Updates are applied with refresh(), which reads the row again under the write lock instead of trusting the
+ * caller's copy. Of two updates that finish out of order, or an update that finishes after a delete, the
+ * change applied last then still indexes what the database kept.
+ */
+public class SearchIndex {
+    // BM25 parameters, the usual defaults.
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final MessageDAO messageDAO;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    // By document number
+    private int[] messageIds = new int[1024];
+    private short[] lengths = new short[1024];
+    private final BitSet dead = new BitSet();
+    private int docCount;
+    private int deadCount;
+    private long totalLength;
+    // Current document of each message
+    private final Map<Integer, Integer> docOf = new HashMap<>();
+
+    // Guards the build state and the changes queued during the build.
+    private final Object buildLock = new Object();
+    private boolean building;
+    private boolean built;
+    private List<Change> pending = new ArrayList<>();
+
+    /**
+     * @param messageDAO DAO used to read every message when the index is built.
+     */
+    public SearchIndex(MessageDAO messageDAO) {
+        this.messageDAO = messageDAO;
+    }
+
+    /**
+     * Index a new message. Ignored until the index is built.
+     * @param m Saved message, including message_id.
+     */
+    public void index(Message m) {
+        apply(new Change(m.getMessage_id(), m.getMessage_text(), false));
+    }
+
+    /**
+     * Index the current text of an updated message, read from the database while holding the write lock,
+     * or remove the message if it is gone. Ignored until the index is built.
+     * @param messageId Updated message.
+     */
+    public void refresh(int messageId) {
+        apply(new Change(messageId, null, true));
+    }
+
+    /**
+     * Remove a deleted message. Ignored until the index is built.
+     * @param messageId Deleted message.
+     */
+    public void remove(int messageId) {
+        apply(new Change(messageId, null, false));
+    }
+
+    /**
+     * Find the messages that contain any word of the query, best match first: higher BM25 score, then
+     * higher message_id. Builds the index first if this is the first search, which reads every message.
+     * @param query Words to look for.
+     * @param offset Number of best matches to skip.
+     * @param limit Most message_ids to return.
+     * @return message_ids of the matches, empty if nothing matches.
+     * @throws UncheckedIOException if the index had to be built and reading the messages failed.
+     */
+    public int[] search(String query, int offset, int limit) {
+        build();
+        List<String> terms = new ArrayList<>(termFrequencies(query).keySet());
+
+        lock.readLock().lock();
+        try {
+            int live = docCount - deadCount;
+            if (live == 0 || terms.isEmpty()) {
+                return new int[0];
+            }
+            float avgLength = (float) totalLength / live;
+
+            List<Postings> matched = new ArrayList<>(terms.size());
+            long postingCount = 0;
+            for (String term : terms) {
+                Postings p = postings.get(term);
+                if (p != null) {
+                    matched.add(p);
+                    postingCount += p.size;
+                }
+            }
+            // Common words touch a large part of the index, an array indexed by document is then cheaper than hashing.
+            ScoreTable scores = postingCount * 8 > docCount ? new ScoreTable(docCount) : new ScoreTable();
+            for (Postings p : matched) {
+                // Dead documents still count in df until the next compaction, which only softens the idf a little.
+                float idf = (float) Math.log(1 + (live - p.size + 0.5) / (p.size + 0.5));
+                for (int i = 0; i < p.size; i++) {
+                    int doc = p.docs[i];
+                    if (dead.get(doc)) {
+                        continue;
+                    }
+                    int tf = p.freqs[i];
+                    float norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+                    scores.add(doc, idf * tf * (K1 + 1) / (tf + norm));
+                }
+            }
+
+            // Keep the best offset + limit in a min-heap, worst on top.
+            int wanted = offset + limit;
+            PriorityQueue<long[]> best = new PriorityQueue<>(Math.max(1, Math.min(wanted, scores.size)),
+                    (a, b) -> compare(a[0], a[1], b[0], b[1]));
+            for (int slot = 0; slot < scores.values.length; slot++) {
+                int doc = scores.docAt(slot);
+                if (doc < 0) {
+                    continue;
+                }
+                float score = scores.values[slot];
+                if (best.size() == wanted && score < Float.intBitsToFloat((int) best.peek()[0])) {
+                    continue;
+                }
+                long[] hit = {Float.floatToIntBits(score), messageIds[doc]};
+                if (best.size() < wanted) {
+                    best.add(hit);
+                } else if (compare(hit[0], hit[1], best.peek()[0], best.peek()[1]) > 0) {
+                    best.poll();
+                    best.add(hit);
+                }
+            }
+
+            // The page is the worst best.size() - offset hits. Polling gives the worst first, so fill it from its end.
+            int[] ids = new int[Math.max(0, best.size() - offset)];
+            for (int i = ids.length - 1; i >= 0; i--) {
+                ids[i] = (int) best.poll()[1];
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of messages in the index, 0 until it is built.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount - deadCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Build the index if it isn't built yet. Concurrent callers wait for the one building it.
+     * @throws UncheckedIOException if reading the messages failed, the index is then left empty and unbuilt.
+     */
+    private void build() {
+        synchronized (buildLock) {
+            while (building) {
+                try {
+                    buildLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (built) {
+                return;
+            }
+            building = true;
+        }
+
+        Exception failure = null;
+        lock.writeLock().lock();
+        try {
+            messageDAO.forEachMessage(m -> add(m.getMessage_id(), m.getMessage_text()));
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        synchronized (buildLock) {
+            if (failure != null) {
+                // The scan stopped part way. The changes queued meanwhile are already in the database, so the
+                // next build sees them and they are dropped with the partial index.
+                pending = new ArrayList<>();
+                building = false;
+                buildLock.notifyAll();
+                throw failure instanceof IOException
+                        ? new UncheckedIOException((IOException) failure)
+                        : (RuntimeException) failure;
+            }
+            lock.writeLock().lock();
+            try {
+                for (Change change : pending) {
+                    change.applyTo(this);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            pending = null;
+            building = false;
+            built = true;
+            buildLock.notifyAll();
+        }
+    }
+
+    /**
+     * Empty the index. Caller holds the write lock.
+     */
+    private void clear() {
+        postings.clear();
+        messageIds = new int[1024];
+        lengths = new short[1024];
+        dead.clear();
+        docCount = 0;
+        deadCount = 0;
+        totalLength = 0;
+        docOf.clear();
+    }
+
+    private void apply(Change change) {
+        synchronized (buildLock) {
+            if (building) {
+                pending.add(change);
+                return;
+            }
+            if (!built) {
+                return;
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            change.applyTo(this);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the message's current document with one for text. Caller holds the write lock.
+     * @param text New text, or null to only remove the message.
+     */
+    private void add(int messageId, String text) {
+        Integer old = text == null ? docOf.remove(messageId) : docOf.get(messageId);
+        if (old != null) {
+            dead.set(old);
+            deadCount++;
+            totalLength -= lengths[old];
+        }
+        if (text == null) {
+            maybeCompact();
+            return;
+        }
+
+        int doc = docCount++;
+        if (doc == messageIds.length) {
+            messageIds = Arrays.copyOf(messageIds, doc * 2);
+            lengths = Arrays.copyOf(lengths, doc * 2);
+        }
+        Map<String, Integer> frequencies = termFrequencies(text);
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), t -> new Postings()).add(doc, entry.getValue());
+            length += entry.getValue();
+        }
+        messageIds[doc] = messageId;
+        lengths[doc] = (short) Math.min(length, Short.MAX_VALUE);
+        totalLength += lengths[doc];
+        docOf.put(messageId, doc);
+        maybeCompact();
+    }
+
+    /**
+     * Once half the documents are dead, renumber the live ones and rewrite the postings without the dead ones.
+     * Caller holds the write lock.
+     */
+    private void maybeCompact() {
+        if (deadCount < 1024 || deadCount * 2 < docCount) {
+            return;
+        }
+        int[] renumber = new int[docCount];
+        int live = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (dead.get(doc)) {
+                renumber[doc] = -1;
+            } else {
+                renumber[doc] = live;
+                messageIds[live] = messageIds[doc];
+                lengths[live] = lengths[doc];
+                docOf.put(messageIds[live], live);
+                live++;
+            }
+        }
+        postings.values().removeIf(p -> p.renumber(renumber) == 0);
+        docCount = live;
+        deadCount = 0;
+        dead.clear();
+    }
+
+    /**
+     * Split text into lowercase words, runs of letters and digits.
+     * @param text Text to split, may be null.
+     * @return How often each word occurs, in order of first occurrence.
+     */
+    static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        if (text == null) {
+            return frequencies;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                frequencies.merge(text.substring(start, i).toLowerCase(), 1, Integer::sum);
+                start = -1;
+            }
+        }
+        return frequencies;
+    }
+
+    /**
+     * Orders hits by score, then message_id.
+     */
+    private static int compare(long scoreBits, long messageId, long otherScoreBits, long otherMessageId) {
+        int byScore = Float.compare(Float.intBitsToFloat((int) scoreBits), Float.intBitsToFloat((int) otherScoreBits));
+        return byScore != 0 ? byScore : Long.compare(messageId, otherMessageId);
+    }
+
+    /**
+     * Documents containing one word, in document order, with how often the word occurs in each.
+     */
+    private static class Postings {
+        int[] docs = new int[4];
+        byte[] freqs = new byte[4];
+        int size;
+
+        void add(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            // Messages are under 255 characters, so a word can't occur more than 127 times.
+            freqs[size] = (byte) Math.min(freq, Byte.MAX_VALUE);
+            size++;
+        }
+
+        /**
+         * @param renumber New number of each document, -1 for dead ones.
+         * @return Number of live documents left.
+         */
+        int renumber(int[] renumber) {
+            int live = 0;
+            for (int i = 0; i < size; i++) {
+                int doc = renumber[docs[i]];
+                if (doc >= 0) {
+                    docs[live] = doc;
+                    freqs[live] = freqs[i];
+                    live++;
+                }
+            }
+            size = live;
+            return live;
+        }
+    }
+
+    /**
+     * Score per document, without boxing. Either an open addressing map from document number to score,
+     * or dense: an array indexed by document number.
+     */
+    private static class ScoreTable {
+        int[] keys;
+        float[] values;
+        int size;
+
+        /**
+         * Open addressing map, grows with the number of documents scored.
+         */
+        ScoreTable() {
+            keys = new int[64];
+            values = new float[64];
+            Arrays.fill(keys, -1);
+        }
+
+        /**
+         * Dense array, for when a large part of the documents is scored.
+         * @param docCount Number of documents.
+         */
+        ScoreTable(int docCount) {
+            values = new float[docCount];
+        }
+
+        /**
+         * @return Document scored in the slot, or -1 if the slot is empty.
+         */
+        int docAt(int slot) {
+            if (keys == null) {
+                return values[slot] > 0 ? slot : -1;
+            }
+            return keys[slot];
+        }
+
+        void add(int doc, float score) {
+            if (keys == null) {
+                if (values[doc] == 0) {
+                    size++;
+                }
+                values[doc] += score;
+                return;
+            }
+            if (size * 2 >= keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int slot = (doc * 0x9E3779B9) >>> 1 & mask;
+            while (keys[slot] >= 0 && keys[slot] != doc) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] < 0) {
+                keys[slot] = doc;
+                size++;
+            }
+            values[slot] += score;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            float[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new float[oldKeys.length * 2];
+            Arrays.fill(keys, -1);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] >= 0) {
+                    add(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A create, update or delete, queued while the index is being built.
+     */
+    private static class Change {
+        final int messageId;
+        final String text;
+        // Read the text from the database when applied, text is then ignored.
+        final boolean reread;
+
+        Change(int messageId, String text, boolean reread) {
+            this.messageId = messageId;
+            this.text = text;
+            this.reread = reread;
+        }
+
+        /**
+         * Caller holds the write lock.
+         */
+        void applyTo(SearchIndex index) {
+            if (reread) {
+                Message current = index.messageDAO.getMessageById(messageId);
+                index.add(messageId, current == null ? null : current.getMessage_text());
+            } else {
+                index.add(messageId, text);
+            }
+        }
+    }
+}
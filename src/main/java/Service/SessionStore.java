@@ -0,0 +1,200 @@
+package Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import Util.TimerWheel;
+
+/**
+ * Login sessions, kept in memory only.
+ *
+ * A session token is "account_id.expires.session_id.signature": the signature is an HMAC-SHA256 of the rest
+ * with a server secret, so a forged or edited token is turned away by a signature check, and a genuine one
+ * costs one hash map lookup to make sure the session wasn't ended. Neither touches the database.
+ * Sessions end after a fixed time, a timer wheel removes them from the map once they expire.
+ *
+ * Sessions don't survive a restart.
+ */
+public class SessionStore {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * account_id of each live session, by session_id.
+     */
+    private final ConcurrentHashMap<String, Integer> sessions = new ConcurrentHashMap<>();
+    private final TimerWheel<String> expiry;
+    // Only in the store made by the no-arg constructor, null otherwise.
+    private final ScheduledExecutorService ticker;
+
+    /**
+     * Sessions last -Dsocialmedia.session.ttlSeconds (an hour by default). Tokens are signed with
+     * -Dsocialmedia.session.secret, or a random secret when it isn't set.
+     */
+    public SessionStore() {
+        this(secret(), Long.getLong("socialmedia.session.ttlSeconds", 3600) * 1000, System::currentTimeMillis,
+                Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "session-expiry");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+        ticker.scheduleAtFixedRate(() -> expiry.tick(clock.getAsLong()), 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A store without the background thread, expired sessions leave the map when tick() is called.
+     * @param secret Key the tokens are signed with.
+     * @param ttlMillis How long a session lasts.
+     * @param clock Current time in milliseconds.
+     */
+    public SessionStore(byte[] secret, long ttlMillis, LongSupplier clock) {
+        this(secret, ttlMillis, clock, null);
+    }
+
+    private SessionStore(byte[] secret, long ttlMillis, LongSupplier clock, ScheduledExecutorService ticker) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.expiry = new TimerWheel<>(4096, 1000, clock.getAsLong(), sessions::remove);
+        this.ticker = ticker;
+    }
+
+    /**
+     * Stop the background expiry, if this store has one.
+     */
+    public void close() {
+        if (ticker != null) {
+            ticker.shutdown();
+        }
+    }
+
+    /**
+     * Start a session.
+     * @param accountId Account that logged in.
+     * @return Token that identifies the session.
+     */
+    public String create(int accountId) {
+        byte[] id = new byte[16];
+        random.nextBytes(id);
+        String sessionId = BASE64.encodeToString(id);
+        long expires = clock.getAsLong() + ttlMillis;
+
+        sessions.put(sessionId, accountId);
+        expiry.schedule(sessionId, expires);
+        String payload = accountId + "." + expires + "." + sessionId;
+        return payload + "." + BASE64.encodeToString(sign(payload));
+    }
+
+    /**
+     * @param token Token from create(), or null.
+     * @return account_id of the token's session, or null if the token is missing, forged, expired or ended.
+     */
+    public Integer authenticate(String token) {
+        String[] parts = parse(token);
+        if (parts == null) {
+            return null;
+        }
+        try {
+            int accountId = Integer.parseInt(parts[0]);
+            if (Long.parseLong(parts[1]) <= clock.getAsLong()) {
+                return null;
+            }
+            Integer live = sessions.get(parts[2]);
+            return live != null && live == accountId ? live : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * End the token's session. Ending a session that already ended changes nothing.
+     * @param token Token from create().
+     * @return true if the token was valid.
+     */
+    public boolean end(String token) {
+        if (authenticate(token) == null) {
+            return false;
+        }
+        sessions.remove(parse(token)[2]);
+        return true;
+    }
+
+    /**
+     * Remove the sessions that expired. Runs every second unless the store was built without the background thread.
+     * @return Number of sessions removed.
+     */
+    public int tick() {
+        return expiry.tick(clock.getAsLong());
+    }
+
+    /**
+     * @return Number of sessions in memory.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Splits a token and checks its signature.
+     * @param token
+     * @return account_id, expires and session_id, or null if the token isn't one of ours.
+     */
+    private String[] parse(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.lastIndexOf('.');
+        String[] parts = token.substring(0, Math.max(dot, 0)).split("\\.");
+        if (dot < 0 || parts.length != 3) {
+            return null;
+        }
+        byte[] signature;
+        try {
+            signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return MessageDigest.isEqual(signature, sign(token.substring(0, dot))) ? parts : null;
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            // Mac instances aren't thread safe, and creating one is cheap next to the request.
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 is part of every Java platform.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return -Dsocialmedia.session.secret, or 32 random bytes.
+     */
+    private static byte[] secret() {
+        String configured = System.getProperty("socialmedia.session.secret");
+        if (configured != null) {
+            return configured.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+}
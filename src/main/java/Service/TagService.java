@@ -0,0 +1,186 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import DAO.TagDAO;
+import Model.Account;
+import Model.Message;
+import Model.TagCount;
+import Util.DbExecutor;
+import Util.SlidingWindowCounter;
+
+/**
+ * #tags and @mentions.
+ *
+ * When a message is saved its tags and the accounts it mentions are written to side tables that are indexed
+ * newest first, so a page of a tag or of an account's mentions is one index range scan of the page's size.
+ * Tag uses are also counted in memory over a sliding window for the trending tags, which never reads the
+ * message table.
+ */
+public class TagService {
+    private static final Pattern TAG = Pattern.compile("#([\\p{L}\\p{N}_]+)");
+    private static final Pattern MENTION = Pattern.compile("@([\\p{L}\\p{N}_]+)");
+
+    private TagDAO tagDAO;
+    private AccountIndex accounts;
+    private DbExecutor dbExecutor;
+
+    /**
+     * Uses of each tag by newly created messages, in one minute buckets.
+     */
+    private final SlidingWindowCounter trending;
+
+    /**
+     * @param accounts Account index used to resolve mentioned usernames, shared with the other services.
+     * @param dbExecutor Executor the async methods run their database work on.
+     */
+    public TagService(AccountIndex accounts, DbExecutor dbExecutor) {
+        this(new TagDAO(), accounts, dbExecutor,
+                new SlidingWindowCounter(Integer.getInteger("socialmedia.trending.windowMinutes", 60), 60_000,
+                        Long.getLong("socialmedia.trending.maxTags", 10_000)));
+    }
+
+    /**
+     * @param tagDAO DAO used for tags and mentions.
+     * @param accounts Account index used to resolve mentioned usernames.
+     * @param dbExecutor Executor the async methods run their database work on.
+     * @param trending Counter of recent tag uses.
+     */
+    public TagService(TagDAO tagDAO, AccountIndex accounts, DbExecutor dbExecutor, SlidingWindowCounter trending) {
+        this.tagDAO = tagDAO;
+        this.accounts = accounts;
+        this.dbExecutor = dbExecutor;
+        this.trending = trending;
+    }
+
+    /**
+     * Saves the tags and mentions of newly created messages and counts their tags as trending.
+     * Called by MessageService once the messages are saved.
+     * @param created Saved messages, including message_id.
+     */
+    public void onCreated(List<Message> created) {
+        save(created, false);
+    }
+
+    /**
+     * Replaces the tags and mentions of a message whose text was updated. An update doesn't count towards
+     * the trending tags, the message was counted when it was created.
+     * @param updated Updated message.
+     */
+    public void onUpdated(Message updated) {
+        save(List.of(updated), true);
+    }
+
+    /**
+     * @param messages Saved messages.
+     * @param replace true if the messages were updated and their old tags and mentions must go.
+     */
+    private void save(List<Message> messages, boolean replace) {
+        List<Message> toSave = new ArrayList<>(messages.size());
+        List<Set<String>> tags = new ArrayList<>(messages.size());
+        List<Set<Integer>> mentions = new ArrayList<>(messages.size());
+        for (Message m : messages) {
+            Set<String> messageTags = extractTags(m.getMessage_text());
+            Set<Integer> messageMentions = extractMentions(m.getMessage_text());
+            // Most messages have neither, skip the transaction for them. An update may remove the old ones.
+            if (replace || !messageTags.isEmpty() || !messageMentions.isEmpty()) {
+                toSave.add(m);
+                tags.add(messageTags);
+                mentions.add(messageMentions);
+            }
+            if (!replace) {
+                for (String tag : messageTags) {
+                    trending.increment(tag);
+                }
+            }
+        }
+        if (!toSave.isEmpty()) {
+            tagDAO.saveTagsAndMentions(toSave, tags, mentions, replace);
+        }
+    }
+
+    /**
+     * @param text message_text
+     * @return Distinct tags in the text, lowercase and without the #, in order of appearance.
+     */
+    private static Set<String> extractTags(String text) {
+        Set<String> tags = new LinkedHashSet<>();
+        Matcher matcher = TAG.matcher(text);
+        while (matcher.find()) {
+            tags.add(matcher.group(1).toLowerCase(Locale.ROOT));
+        }
+        return tags;
+    }
+
+    /**
+     * @param text message_text
+     * @return account_ids of the existing accounts mentioned by @username in the text, in order of appearance.
+     */
+    private Set<Integer> extractMentions(String text) {
+        Set<Integer> mentioned = new LinkedHashSet<>();
+        Matcher matcher = MENTION.matcher(text);
+        while (matcher.find()) {
+            Account account = accounts.getByUsername(matcher.group(1));
+            if (account != null) {
+                mentioned.add(account.getAccount_id());
+            }
+        }
+        return mentioned;
+    }
+
+    /**
+     * Gets one page of the messages with a tag, newest first (time_posted_epoch, then message_id).
+     * @param tag Tag, with or without the #, in any case.
+     * @param beforeTime Cursor time_posted_epoch, Long.MAX_VALUE for the first page.
+     * @param beforeId Cursor message_id, Integer.MAX_VALUE for the first page.
+     * @param limit Page size.
+     * @return Completes with the messages in the page, empty when there are no more.
+     */
+    public CompletableFuture<List<Message>> getTagPageAsync(String tag, long beforeTime, int beforeId, int limit) {
+        String normalized = normalizeTag(tag);
+        return dbExecutor.supply(() -> tagDAO.getTagPage(normalized, beforeTime, beforeId, limit));
+    }
+
+    /**
+     * Gets one page of the messages that mention an account, newest first (time_posted_epoch, then message_id).
+     * @param accountId Mentioned account.
+     * @param beforeTime Cursor time_posted_epoch, Long.MAX_VALUE for the first page.
+     * @param beforeId Cursor message_id, Integer.MAX_VALUE for the first page.
+     * @param limit Page size.
+     * @return Completes with the messages in the page, empty when there are no more.
+     */
+    public CompletableFuture<List<Message>> getMentionPageAsync(int accountId, long beforeTime, int beforeId,
+                                                                int limit) {
+        return dbExecutor.supply(() -> tagDAO.getMentionPage(accountId, beforeTime, beforeId, limit));
+    }
+
+    /**
+     * The tags used by the most messages created within the trending window, from memory.
+     * @param limit Most tags to return.
+     * @return Tags and their counts, most used first, ties by tag.
+     */
+    public List<TagCount> getTrending(int limit) {
+        List<TagCount> top = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : trending.top(limit)) {
+            top.add(new TagCount(entry.getKey(), entry.getValue()));
+        }
+        return top;
+    }
+
+    /**
+     * @param tag Tag from a request.
+     * @return The tag as it is saved, lowercase and without a leading #.
+     */
+    private static String normalizeTag(String tag) {
+        String bare = tag.startsWith("#") ? tag.substring(1) : tag;
+        return bare.toLowerCase(Locale.ROOT);
+    }
+}
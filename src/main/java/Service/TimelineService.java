@@ -0,0 +1,210 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import DAO.TimelineDAO;
+import Model.Message;
+import Util.DbExecutor;
+
+/**
+ * Follows and home timelines.
+ *
+ * A home timeline holds the messages of every account someone follows, newest first. It is precomputed:
+ * when a message is saved it is copied into the timeline of each follower of its poster (fan-out on write),
+ * so reading a page costs one index range scan of the page's size instead of a join over all followees.
+ *
+ * Copying costs one row per follower, so accounts with more than fanOutLimit followers are switched to
+ * fan-out on read: their messages are not copied, instead each home page also reads the newest messages
+ * of the followed accounts of that kind and merges them in. An account that was switched stays switched.
+ */
+public class TimelineService {
+    private static final Comparator<Message> NEWEST_FIRST = Comparator
+            .comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id)
+            .reversed();
+
+    private FollowDAO followDAO;
+    private TimelineDAO timelineDAO;
+    private MessageDAO messageDAO;
+    private AccountIndex accounts;
+    private DbExecutor dbExecutor;
+    private final int fanOutLimit;
+    private final int backfill;
+
+    /**
+     * Accounts whose messages are merged into home timelines on read, mirrored from the fan_out_on_read table.
+     */
+    private final Set<Integer> fanOutOnRead = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param accounts Account index used to check that both accounts of a follow exist, shared with the other services.
+     * @param dbExecutor Executor the async methods run their database work on.
+     */
+    public TimelineService(AccountIndex accounts, DbExecutor dbExecutor) {
+        this(new FollowDAO(), new TimelineDAO(), new MessageDAO(), accounts, dbExecutor,
+                Integer.getInteger("socialmedia.timeline.fanOutLimit", 10_000),
+                Integer.getInteger("socialmedia.timeline.backfill", 200));
+    }
+
+    /**
+     * @param followDAO DAO used for follows.
+     * @param timelineDAO DAO used for the precomputed home timelines.
+     * @param messageDAO DAO used to read the messages of accounts that are fanned out on read.
+     * @param accounts Account index used to check that both accounts of a follow exist.
+     * @param dbExecutor Executor the async methods run their database work on.
+     * @param fanOutLimit Accounts with more followers are fanned out on read.
+     * @param backfill How many of an account's newest messages are copied into a new follower's home timeline.
+     */
+    public TimelineService(FollowDAO followDAO, TimelineDAO timelineDAO, MessageDAO messageDAO, AccountIndex accounts,
+                           DbExecutor dbExecutor, int fanOutLimit, int backfill) {
+        this.followDAO = followDAO;
+        this.timelineDAO = timelineDAO;
+        this.messageDAO = messageDAO;
+        this.accounts = accounts;
+        this.dbExecutor = dbExecutor;
+        this.fanOutLimit = fanOutLimit;
+        this.backfill = backfill;
+        this.fanOutOnRead.addAll(followDAO.getFanOutOnReadAccounts());
+    }
+
+    /**
+     * Follow an account. The newest messages of the followed account show up in the follower's home timeline.
+     * Both accounts must exist and be different. Following an account twice is the same as following it once.
+     * @param followerId Account that follows.
+     * @param followeeId Account to follow.
+     * @return true if the follower now follows the followee, false if the follow is invalid or failed.
+     */
+    public boolean follow(int followerId, int followeeId) {
+        if (followerId == followeeId || !accounts.exists(followerId) || !accounts.exists(followeeId)) {
+            return false;
+        }
+
+        // Messages of fanned out on read accounts are read at request time, nothing to copy.
+        boolean onRead = fanOutOnRead.contains(followeeId);
+        if (!followDAO.follow(followerId, followeeId, onRead ? 0 : backfill)) {
+            return false;
+        }
+        if (!onRead && followDAO.countFollowers(followeeId, fanOutLimit + 1) > fanOutLimit
+                && followDAO.addFanOutOnRead(followeeId)) {
+            fanOutOnRead.add(followeeId);
+        }
+        return true;
+    }
+
+    /**
+     * Async follow.
+     * @return Completes with true if the follower now follows the followee.
+     */
+    public CompletableFuture<Boolean> followAsync(int followerId, int followeeId) {
+        return dbExecutor.supply(() -> follow(followerId, followeeId));
+    }
+
+    /**
+     * Stop following an account, its messages leave the follower's home timeline.
+     * Unfollowing an account that isn't followed changes nothing.
+     * @param followerId Account that follows.
+     * @param followeeId Account to unfollow.
+     * @return true if the follower no longer follows the followee, false if it failed.
+     */
+    public boolean unfollow(int followerId, int followeeId) {
+        return followDAO.unfollow(followerId, followeeId);
+    }
+
+    /**
+     * Async unfollow.
+     * @return Completes with true if the follower no longer follows the followee.
+     */
+    public CompletableFuture<Boolean> unfollowAsync(int followerId, int followeeId) {
+        return dbExecutor.supply(() -> unfollow(followerId, followeeId));
+    }
+
+    /**
+     * @param followerId Account that follows.
+     * @return Completes with the account_ids it follows, in ascending order.
+     */
+    public CompletableFuture<List<Integer>> getFolloweesAsync(int followerId) {
+        return dbExecutor.supply(() -> followDAO.getFollowees(followerId));
+    }
+
+    /**
+     * @param followeeId Account that is followed.
+     * @return Completes with the account_ids that follow it, in ascending order.
+     */
+    public CompletableFuture<List<Integer>> getFollowersAsync(int followeeId) {
+        return dbExecutor.supply(() -> followDAO.getFollowers(followeeId));
+    }
+
+    /**
+     * Copies newly saved messages into their followers' home timelines, except for accounts that are fanned out
+     * on read. Called by MessageService once the messages are saved.
+     * @param saved Saved messages, including message_id.
+     */
+    public void fanOut(List<Message> saved) {
+        List<Message> toCopy = new ArrayList<>(saved.size());
+        for (Message m : saved) {
+            if (!fanOutOnRead.contains(m.getPosted_by())) {
+                toCopy.add(m);
+            }
+        }
+        timelineDAO.fanOut(toCopy);
+    }
+
+    /**
+     * Gets one page of an account's home timeline, newest first (time_posted_epoch, then message_id).
+     * The precomputed page is merged with the same page of every followed account that is fanned out on read,
+     * so the cost grows with the page size and the number of such accounts, not with the number of followees.
+     * @param ownerId Account whose home timeline is returned.
+     * @param beforeTime Cursor time_posted_epoch, Long.MAX_VALUE for the first page.
+     * @param beforeId Cursor message_id, Integer.MAX_VALUE for the first page.
+     * @param limit Page size.
+     * @return Messages in the page, empty when there are no more.
+     */
+    public List<Message> getHomePage(int ownerId, long beforeTime, int beforeId, int limit) {
+        List<Message> page = timelineDAO.getHomePage(ownerId, beforeTime, beforeId, limit);
+        if (fanOutOnRead.isEmpty()) {
+            return page;
+        }
+        List<Integer> pulled = followDAO.getFollowedAmong(ownerId, fanOutOnRead);
+        if (pulled.isEmpty()) {
+            return page;
+        }
+
+        // Messages copied before their poster was switched to fan-out on read are found twice.
+        Map<Integer, Message> merged = new LinkedHashMap<>();
+        for (Message m : page) {
+            merged.put(m.getMessage_id(), m);
+        }
+        for (int followeeId : pulled) {
+            for (Message m : messageDAO.getFeedPage(followeeId, beforeTime, beforeId, limit)) {
+                merged.putIfAbsent(m.getMessage_id(), m);
+            }
+        }
+        List<Message> newest = new ArrayList<>(merged.values());
+        newest.sort(NEWEST_FIRST);
+        return newest.size() > limit ? new ArrayList<>(newest.subList(0, limit)) : newest;
+    }
+
+    /**
+     * Async getHomePage.
+     * @return Completes with the messages in the page.
+     */
+    public CompletableFuture<List<Message>> getHomePageAsync(int ownerId, long beforeTime, int beforeId, int limit) {
+        return dbExecutor.supply(() -> getHomePage(ownerId, beforeTime, beforeId, limit));
+    }
+
+    /**
+     * @return Number of accounts that are fanned out on read.
+     */
+    public int getFanOutOnReadCount() {
+        return fanOutOnRead.size();
+    }
+}
@@ -0,0 +1,618 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small bounded JDBC connection pool.
+ * Connections handed out are proxies, calling close() returns the physical connection to the pool
+ * instead of closing it, so callers should always use try-with-resources.
+ * Idle connections above the minimum are evicted after the idle timeout, connections are validated
+ * before being handed out, and a connection held longer than the leak threshold is logged as a warning
+ * with the thread that borrowed it. Capturing the borrower's stack trace costs a Throwable per borrow,
+ * so it is only done when leakStackTraces is on (-Dsocialmedia.pool.leakStackTraces=true), the warning
+ * then carries it.
+ *
+ * Each physical connection also keeps a small LRU cache of prepared statements, keyed by SQL. The DAOs
+ * use a handful of fixed SQL strings, so after warm-up prepareStatement() hands back an already parsed
+ * statement and closing it only clears its parameters.
+ */
+public class ConnectionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final DataSource dataSource;
+    private final int minIdle;
+    private final int maxSize;
+    private final long acquireTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long leakThresholdMs;
+    private final boolean leakStackTraces;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    // One permit per connection that may be borrowed, this is what bounds the pool.
+    private final Semaphore permits;
+    // Most recently returned connection is at the head, so hot connections get reused first.
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    // Gauges and counters
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder leakCount = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param dataSource Creates the physical connections.
+     * @param minIdle Number of connections kept open even when idle.
+     * @param maxSize Maximum number of connections open at once.
+     * @param acquireTimeoutMs How long getConnection() waits for a free connection before failing.
+     * @param idleTimeoutMs How long a connection above minIdle may sit idle before it is closed.
+     * @param leakThresholdMs A connection borrowed for longer than this is reported as a leak, 0 disables it.
+     * @param housekeepingMs How often idle eviction and leak detection run.
+     */
+    public ConnectionPool(DataSource dataSource, int minIdle, int maxSize, long acquireTimeoutMs,
+                          long idleTimeoutMs, long leakThresholdMs, long housekeepingMs) {
+        this(dataSource, minIdle, maxSize, acquireTimeoutMs, idleTimeoutMs, leakThresholdMs, housekeepingMs, 0);
+    }
+
+    /**
+     * @param dataSource Creates the physical connections.
+     * @param minIdle Number of connections kept open even when idle.
+     * @param maxSize Maximum number of connections open at once.
+     * @param acquireTimeoutMs How long getConnection() waits for a free connection before failing.
+     * @param idleTimeoutMs How long a connection above minIdle may sit idle before it is closed.
+     * @param leakThresholdMs A connection borrowed for longer than this is reported as a leak, 0 disables it.
+     * @param housekeepingMs How often idle eviction and leak detection run.
+     * @param statementCacheSize Prepared statements cached per connection, 0 disables the cache.
+     */
+    public ConnectionPool(DataSource dataSource, int minIdle, int maxSize, long acquireTimeoutMs,
+                          long idleTimeoutMs, long leakThresholdMs, long housekeepingMs, int statementCacheSize) {
+        this(dataSource, minIdle, maxSize, acquireTimeoutMs, idleTimeoutMs, leakThresholdMs, housekeepingMs,
+                statementCacheSize, false);
+    }
+
+    /**
+     * @param dataSource Creates the physical connections.
+     * @param minIdle Number of connections kept open even when idle.
+     * @param maxSize Maximum number of connections open at once.
+     * @param acquireTimeoutMs How long getConnection() waits for a free connection before failing.
+     * @param idleTimeoutMs How long a connection above minIdle may sit idle before it is closed.
+     * @param leakThresholdMs A connection borrowed for longer than this is reported as a leak, 0 disables it.
+     * @param housekeepingMs How often idle eviction and leak detection run.
+     * @param statementCacheSize Prepared statements cached per connection, 0 disables the cache.
+     * @param leakStackTraces Capture the stack trace of every borrow, to show where a leaked connection was
+     *                        borrowed. Meant for debugging, it slows down every borrow.
+     */
+    public ConnectionPool(DataSource dataSource, int minIdle, int maxSize, long acquireTimeoutMs,
+                          long idleTimeoutMs, long leakThresholdMs, long housekeepingMs, int statementCacheSize,
+                          boolean leakStackTraces) {
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: minIdle=" + minIdle + ", maxSize=" + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.leakThresholdMs = leakThresholdMs;
+        this.leakStackTraces = leakStackTraces;
+        this.validationTimeoutSeconds = 1;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeep, housekeepingMs, housekeepingMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection, waiting up to the acquire timeout if all connections are in use.
+     * @return A pooled connection, close it to give it back.
+     * @throws SQLException if the pool is exhausted for longer than the timeout or no connection can be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        if (shutdown) {
+            throw new SQLException("Connection pool has been shut down.");
+        }
+        long start = System.nanoTime();
+        waiters.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                timeoutCount.increment();
+                throw new SQLException("Timed out after " + acquireTimeoutMs + "ms waiting for a database connection "
+                        + "(active=" + getActiveCount() + ", max=" + maxSize + ").");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        } finally {
+            waiters.decrementAndGet();
+        }
+
+        try {
+            PooledConnection pc = takeValidIdleConnection();
+            if (pc == null) {
+                pc = openConnection();
+            }
+            pc.borrowedAt = System.currentTimeMillis();
+            pc.borrowStack = leakThresholdMs > 0 && leakStackTraces ? new Throwable("Connection acquired here") : null;
+            pc.borrowThread = Thread.currentThread().getName();
+            pc.leakReported = false;
+            borrowed.add(pc);
+            recordAcquire(System.nanoTime() - start);
+            return pc.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close all connections and stop the housekeeping thread.
+     * Borrowed connections are closed when they are returned.
+     */
+    public void shutdown() {
+        shutdown = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.poll()) != null) {
+            closeQuietly(pc);
+        }
+    }
+
+    private PooledConnection takeValidIdleConnection() {
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            try {
+                if (pc.physical.isValid(validationTimeoutSeconds)) {
+                    return pc;
+                }
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+            // Broken connection, throw it away and try the next one.
+            closeQuietly(pc);
+        }
+        return null;
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        Connection physical = dataSource.getConnection();
+        total.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    /**
+     * Called by the connection proxy when the caller closes it.
+     */
+    private void release(PooledConnection pc) {
+        borrowed.remove(pc);
+        try {
+            pc.reclaimStatements();
+            // Don't let an unfinished transaction leak into the next borrower.
+            if (!pc.physical.getAutoCommit()) {
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+            pc.lastUsed = System.currentTimeMillis();
+            pc.borrowStack = null;
+            pc.borrowThread = null;
+            if (shutdown) {
+                closeQuietly(pc);
+            } else {
+                idle.offerFirst(pc);
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            closeQuietly(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void closeQuietly(PooledConnection pc) {
+        total.decrementAndGet();
+        try {
+            pc.physical.close();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void recordAcquire(long nanos) {
+        acquireCount.increment();
+        acquireNanos.add(nanos);
+        long max;
+        while (nanos > (max = maxAcquireNanos.get())) {
+            if (maxAcquireNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Runs on the housekeeping thread: evicts idle connections, refills to minIdle and reports leaks.
+     */
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // Oldest idle connections are at the tail.
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && total.get() > minIdle) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastUsed > idleTimeoutMs && idle.remove(pc)) {
+                    closeQuietly(pc);
+                }
+            }
+
+            while (!shutdown && total.get() < minIdle) {
+                PooledConnection pc = openConnection();
+                pc.lastUsed = now;
+                idle.offerLast(pc);
+            }
+
+            if (leakThresholdMs > 0) {
+                for (PooledConnection pc : borrowed) {
+                    String thread = pc.borrowThread;
+                    Throwable stack = pc.borrowStack;
+                    if (!pc.leakReported && thread != null && now - pc.borrowedAt > leakThresholdMs) {
+                        pc.leakReported = true;
+                        leakCount.increment();
+                        if (stack != null) {
+                            LOG.warn("Possible connection leak: connection held for {}ms (threshold {}ms) by thread {}.",
+                                    now - pc.borrowedAt, leakThresholdMs, thread, stack);
+                        } else {
+                            LOG.warn("Possible connection leak: connection held for {}ms (threshold {}ms) by thread {}."
+                                            + " Set -Dsocialmedia.pool.leakStackTraces=true to log where it was borrowed.",
+                                    now - pc.borrowedAt, leakThresholdMs, thread);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * @return Connections currently borrowed.
+     */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * @return Connections open but not borrowed.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return All open physical connections.
+     */
+    public int getTotalCount() {
+        return total.get();
+    }
+
+    /**
+     * @return Threads currently waiting for a connection.
+     */
+    public int getWaiterCount() {
+        return waiters.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return Number of successful getConnection() calls.
+     */
+    public long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    /**
+     * @return Total time spent in successful getConnection() calls, in nanoseconds.
+     */
+    public long getAcquireNanos() {
+        return acquireNanos.sum();
+    }
+
+    /**
+     * @return Slowest getConnection() call so far, in nanoseconds.
+     */
+    public long getMaxAcquireNanos() {
+        return maxAcquireNanos.get();
+    }
+
+    /**
+     * @return Number of getConnection() calls that timed out.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /**
+     * @return Number of connections reported as leaked.
+     */
+    public long getLeakCount() {
+        return leakCount.sum();
+    }
+
+    /**
+     * @return prepareStatement() calls answered from the statement cache.
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    /**
+     * @return prepareStatement() calls that had to parse the SQL.
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    /**
+     * A physical connection owned by the pool plus its bookkeeping.
+     */
+    private class PooledConnection {
+        final Connection physical;
+        volatile long lastUsed;
+        volatile long borrowedAt;
+        volatile Throwable borrowStack;
+        volatile String borrowThread;
+        volatile boolean leakReported;
+
+        // Only touched by the thread that has the connection borrowed (and by release()).
+        final Map<String, CachedStatement> statements;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.lastUsed = System.currentTimeMillis();
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() <= statementCacheSize) {
+                        return false;
+                    }
+                    eldest.getValue().evict();
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Hand out a cached statement for the SQL, preparing and caching it on the first call.
+         * If the cached statement is still open by the same borrower an uncached one is prepared instead.
+         */
+        PreparedStatement prepare(LeaseHandler lease, String sql, int autoGeneratedKeys) throws SQLException {
+            String key = autoGeneratedKeys + ":" + sql;
+            CachedStatement cached = statements.get(key);
+            if (cached == null) {
+                statementCacheMisses.increment();
+                cached = new CachedStatement(physical.prepareStatement(sql, autoGeneratedKeys));
+                statements.put(key, cached);
+            } else if (cached.inUse) {
+                statementCacheMisses.increment();
+                return physical.prepareStatement(sql, autoGeneratedKeys);
+            } else {
+                statementCacheHits.increment();
+            }
+            return cached.lease(lease);
+        }
+
+        /**
+         * Statements the borrower forgot to close become available again.
+         */
+        void reclaimStatements() throws SQLException {
+            for (CachedStatement cached : statements.values()) {
+                if (cached.inUse) {
+                    cached.reset();
+                }
+            }
+        }
+
+        /**
+         * A new proxy is created for every borrow so a stale reference can't use the connection after close().
+         */
+        Connection lease() {
+            LeaseHandler handler = new LeaseHandler(this);
+            handler.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, handler);
+            return handler.proxy;
+        }
+    }
+
+    /**
+     * Forwards every call to the physical connection except close() and isClosed().
+     */
+    private class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean closed = false;
+        // The Connection handed to the borrower, returned by PreparedStatement.getConnection().
+        private Connection proxy;
+
+        LeaseHandler(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pc.physical + "]";
+                case "prepareStatement":
+                    if (closed) {
+                        throw new SQLException("Connection has already been returned to the pool.");
+                    }
+                    if (statementCacheSize > 0 && args.length == 1) {
+                        return pc.prepare(this, (String) args[0], Statement.NO_GENERATED_KEYS);
+                    }
+                    if (statementCacheSize > 0 && args.length == 2 && args[1] instanceof Integer) {
+                        return pc.prepare(this, (String) args[0], (Integer) args[1]);
+                    }
+                    // Other overloads are not cached.
+                    return forward(method, args);
+                default:
+                    return forward(method, args);
+            }
+        }
+
+        private Object forward(Method method, Object[] args) throws Throwable {
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+            try {
+                return method.invoke(pc.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * A prepared statement kept open in a connection's statement cache.
+     */
+    private static class CachedStatement {
+        final PreparedStatement statement;
+        boolean inUse = false;
+        boolean evicted = false;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement lease(LeaseHandler lease) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, new StatementHandler(this, lease));
+        }
+
+        /**
+         * Called when the borrower closes the statement: make it ready for the next caller.
+         */
+        void reset() throws SQLException {
+            inUse = false;
+            if (evicted) {
+                statement.close();
+                return;
+            }
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+
+        /**
+         * Dropped from the cache, close it now or once the current borrower is done with it.
+         */
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Forwards every call to the cached statement except close(), isClosed() and getConnection().
+     */
+    private static class StatementHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private final LeaseHandler lease;
+        private boolean closed = false;
+
+        StatementHandler(CachedStatement cached, LeaseHandler lease) {
+            this.cached = cached;
+            this.lease = lease;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        if (!lease.closed) {
+                            cached.reset();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || lease.closed;
+                case "getConnection":
+                    // The pooled connection, so closing it returns it to the pool.
+                    return lease.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + cached.statement + "]";
+                default:
+                    if (closed || lease.closed) {
+                        throw new SQLException("Statement has already been closed.");
+                    }
+                    try {
+                        return method.invoke(cached.statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
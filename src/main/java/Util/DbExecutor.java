@@ -0,0 +1,123 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor for blocking database work, used by the async service methods.
+ * A fixed number of threads (by default one per pooled connection) run the queries, and at most
+ * queueCapacity more tasks may wait. Anything beyond that is rejected right away instead of queueing
+ * without limit, the future fails with RejectedExecutionException and the controller answers 503.
+ */
+public class DbExecutor {
+    private static final DbExecutor shared = new DbExecutor(
+            Integer.getInteger("socialmedia.db.executor.threads", Integer.getInteger("socialmedia.pool.maxSize", 10)),
+            Integer.getInteger("socialmedia.db.executor.queueCapacity", 1000));
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param threads Most tasks running at once.
+     * @param queueCapacity Most tasks waiting for a thread, more are rejected.
+     */
+    public DbExecutor(int threads, int queueCapacity) {
+        this(threads, queueCapacity, "db-executor");
+    }
+
+    /**
+     * The same bounds for other work that must not run on request threads, such as password hashing.
+     * @param threads Most tasks running at once.
+     * @param queueCapacity Most tasks waiting for a thread, more are rejected.
+     * @param name Prefix of the thread names.
+     */
+    public DbExecutor(int threads, int queueCapacity, String name) {
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new DaemonThreadFactory(name),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Executor shared by the services, sized with -Dsocialmedia.db.executor.threads and
+     * -Dsocialmedia.db.executor.queueCapacity.
+     * @return the shared executor
+     */
+    public static DbExecutor getShared() {
+        return shared;
+    }
+
+    /**
+     * Run a blocking task on a database thread.
+     * @param task Work that may block on the database.
+     * @return Completes with the task's result, or fails with RejectedExecutionException when the queue is full.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Stop the threads once the queued tasks have run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return Number of threads running a task.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return Number of tasks waiting for a thread.
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return Most tasks that may wait for a thread.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return Number of tasks rejected because the queue was full.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
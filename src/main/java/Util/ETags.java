@@ -0,0 +1,99 @@
+package Util;
+
+import java.util.List;
+
+import Model.Message;
+
+/**
+ * Entity tags for conditional GETs.
+ *
+ * A message's tag is a 64-bit hash of everything in its JSON, so it changes exactly when the response body
+ * would, it is the same on every server and after a restart, and it can be computed from a cached message
+ * without asking the database. A list's tag hashes the tags of its messages in order.
+ *
+ * Tags are weak (W/"..."): they stand for the JSON, not for the bytes sent, which differ when the response
+ * is compressed.
+ */
+public class ETags {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ETags() {
+    }
+
+    /**
+     * @param m
+     * @return Weak entity tag of the message.
+     */
+    public static String of(Message m) {
+        return quote(hash(FNV_OFFSET, m));
+    }
+
+    /**
+     * @param messages
+     * @return Weak entity tag of the list, in its order.
+     */
+    public static String of(List<Message> messages) {
+        long h = mix(FNV_OFFSET, messages.size());
+        for (Message m : messages) {
+            h = hash(h, m);
+        }
+        return quote(h);
+    }
+
+    /**
+     * Weak comparison of If-None-Match with the current tag, as RFC 9110 asks for GET.
+     * @param ifNoneMatch Request header, a list of quoted tags or *, or null.
+     * @param etag Current tag, from of.
+     * @return true if the client's copy is current and 304 may be answered.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || opaque(tag).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The quoted part of a tag, without W/.
+     */
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static long hash(long h, Message m) {
+        h = mix(h, m.getMessage_id());
+        h = mix(h, m.getPosted_by());
+        h = mix(h, m.getTime_posted_epoch());
+        String text = m.getMessage_text();
+        h = mix(h, text == null ? -1 : text.length());
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                h = (h ^ text.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * FNV-1a over the 8 bytes of a value.
+     */
+    private static long mix(long h, long value) {
+        for (int i = 0; i < 8; i++) {
+            h = (h ^ (value & 0xff)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return h;
+    }
+
+    private static String quote(long h) {
+        return "W/\"" + Long.toHexString(h) + "\"";
+    }
+}
@@ -0,0 +1,52 @@
+package Util;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import Model.Account;
+import Model.Message;
+import Model.MessageResult;
+import Model.TagCount;
+
+/**
+ * One shared, pre-configured ObjectMapper for the whole application.
+ * ObjectMapper, ObjectReader and ObjectWriter are thread safe once configured, so building them once
+ * avoids re-creating serializers and re-introspecting the model classes on every request.
+ */
+public class JsonUtil {
+    /**
+     * Shared mapper. Also used as Javalin's JsonMapper.
+     * AUTO_CLOSE_TARGET is off so writing a value to the response stream doesn't close the response.
+     */
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    public static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+    public static final ObjectWriter ACCOUNT_WRITER = MAPPER.writerFor(Account.class);
+
+    public static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+    public static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+    /**
+     * For the elements of a streamed array. The generator writes its buffer out when it fills instead of after
+     * every message, so the response leaves in large writes, which is also what lets it be compressed.
+     */
+    public static final ObjectWriter MESSAGE_ELEMENT_WRITER = MESSAGE_WRITER.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    public static final ObjectReader MESSAGE_LIST_READER = MAPPER.readerFor(new TypeReference<List<Message>>() {});
+    public static final ObjectWriter MESSAGE_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<Message>>() {});
+
+    public static final ObjectWriter ID_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<Integer>>() {});
+
+    public static final ObjectWriter MESSAGE_RESULT_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<MessageResult>>() {});
+
+    public static final ObjectWriter TAG_COUNT_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<TagCount>>() {});
+
+    private JsonUtil() {
+    }
+}
@@ -0,0 +1,176 @@
+package Util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Registry of latency timers, written out in the Prometheus text format by GET /metrics.
+ *
+ * Recording is wait-free: every timer records into an HdrHistogram Recorder and two LongAdders, with no
+ * lock and no allocation. Only the scrape takes a lock, to move what was recorded since the last scrape
+ * into the timer's all-time histogram.
+ */
+public class Metrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // Timers by metric name, then by label set.
+    private static final ConcurrentMap<String, ConcurrentMap<String, Timer>> timers = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Get or create a timer. Look it up once and keep it, e.g. in a static field, when the labels are fixed.
+     * @param name Metric name, e.g. db_query_seconds.
+     * @param labels Label names and values, alternating.
+     * @return the timer for that name and labels
+     */
+    public static Timer timer(String name, String... labels) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return timers.computeIfAbsent(name, n -> new ConcurrentHashMap<>())
+                .computeIfAbsent(sb.toString(), l -> new Timer());
+    }
+
+    /**
+     * Write every timer as a Prometheus summary: quantiles, _count and _sum in seconds.
+     * @param sb Output.
+     */
+    public static void writeTimers(StringBuilder sb) {
+        // Sorted copies keep the output in a stable order.
+        for (Map.Entry<String, ConcurrentMap<String, Timer>> metric : new TreeMap<>(timers).entrySet()) {
+            String name = metric.getKey();
+            sb.append("# TYPE ").append(name).append(" summary\n");
+            for (Map.Entry<String, Timer> series : new TreeMap<>(metric.getValue()).entrySet()) {
+                String labels = series.getKey();
+                String prefix = labels.isEmpty() ? "" : labels + ",";
+                Timer timer = series.getValue();
+                Histogram snapshot = timer.snapshot();
+                for (double q : QUANTILES) {
+                    // NaN until something was recorded, like the Prometheus client libraries.
+                    double seconds = snapshot.getTotalCount() == 0 ? Double.NaN : snapshot.getValueAtPercentile(q * 100) / 1e9;
+                    sb.append(name).append('{').append(prefix).append("quantile=\"").append(q).append("\"} ")
+                            .append(seconds).append('\n');
+                }
+                String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+                sb.append(name).append("_count").append(braces).append(' ').append(timer.getCount()).append('\n');
+                sb.append(name).append("_sum").append(braces).append(' ').append(timer.getSumNanos() / 1e9).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Write heap, GC, thread and uptime gauges of this JVM.
+     * @param sb Output.
+     */
+    public static void writeJvm(StringBuilder sb) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        sb.append("# TYPE jvm_memory_used_bytes gauge\n");
+        sb.append("jvm_memory_used_bytes{area=\"heap\"} ").append((double) heap.getUsed()).append('\n');
+        sb.append("jvm_memory_used_bytes{area=\"nonheap\"} ").append((double) nonHeap.getUsed()).append('\n');
+        sb.append("# TYPE jvm_memory_committed_bytes gauge\n");
+        sb.append("jvm_memory_committed_bytes{area=\"heap\"} ").append((double) heap.getCommitted()).append('\n');
+        sb.append("jvm_memory_committed_bytes{area=\"nonheap\"} ").append((double) nonHeap.getCommitted()).append('\n');
+        append(sb, "jvm_memory_max_bytes", "gauge", heap.getMax());
+
+        sb.append("# TYPE jvm_gc_collections_total counter\n");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sb.append("jvm_gc_collections_total{gc=\"").append(escape(gc.getName())).append("\"} ")
+                    .append((double) gc.getCollectionCount()).append('\n');
+        }
+        sb.append("# TYPE jvm_gc_collection_seconds_total counter\n");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sb.append("jvm_gc_collection_seconds_total{gc=\"").append(escape(gc.getName())).append("\"} ")
+                    .append(gc.getCollectionTime() / 1e3).append('\n');
+        }
+
+        append(sb, "jvm_threads_live", "gauge", ManagementFactory.getThreadMXBean().getThreadCount());
+        append(sb, "jvm_uptime_seconds", "gauge", ManagementFactory.getRuntimeMXBean().getUptime() / 1e3);
+    }
+
+    /**
+     * Write one unlabelled gauge or counter.
+     * @param sb Output.
+     * @param name Metric name.
+     * @param type gauge or counter.
+     * @param value Current value.
+     */
+    public static void append(StringBuilder sb, String name, String type, double value) {
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Latency timer from 1 microsecond to 1 minute, with 2 significant digits.
+     * Longer values are recorded as 1 minute.
+     */
+    public static class Timer {
+        private static final long LOWEST = TimeUnit.MICROSECONDS.toNanos(1);
+        private static final long HIGHEST = TimeUnit.MINUTES.toNanos(1);
+
+        private final Recorder recorder = new Recorder(LOWEST, HIGHEST, 2);
+        private final Histogram total = new Histogram(LOWEST, HIGHEST, 2);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private Histogram interval;
+
+        /**
+         * @param nanos Duration in nanoseconds.
+         */
+        public void record(long nanos) {
+            recorder.recordValue(Math.min(Math.max(nanos, 0), HIGHEST));
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        /**
+         * @param startNanos System.nanoTime() when the timed work started.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * @return Number of recorded durations.
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return Sum of recorded durations, in nanoseconds.
+         */
+        public long getSumNanos() {
+            return sumNanos.sum();
+        }
+
+        /**
+         * @return Copy of everything recorded so far.
+         */
+        synchronized Histogram snapshot() {
+            interval = recorder.getIntervalHistogram(interval);
+            total.add(interval);
+            return total.copy();
+        }
+    }
+}
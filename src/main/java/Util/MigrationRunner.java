@@ -0,0 +1,103 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.tools.RunScript;
+
+/**
+ * Applies the versioned schema migrations in src/main/resources/db/migration.
+ * Applied versions are recorded in the schema_version table, so each script runs exactly once per database
+ * and a database can be brought up to date from any older version.
+ *
+ * To change the schema, add a new script and append it to MIGRATIONS. Never edit a script that has shipped.
+ */
+public class MigrationRunner {
+    /**
+     * Migration scripts in the order they must be applied. The version is the number after the V.
+     */
+    private static final String[] MIGRATIONS = {
+        "V1__create_account_and_message.sql",
+        "V2__message_posted_by_time_index.sql",
+        "V3__message_feed_index.sql",
+        "V4__follow_and_home_timeline.sql",
+        "V5__message_tags_and_mentions.sql",
+    };
+
+    private static final String LOCATION = "db/migration/";
+
+    private MigrationRunner() {
+    }
+
+    /**
+     * Bring the database up to the latest schema version.
+     * @param connection Connection to migrate, it is left open.
+     * @return Number of migrations applied.
+     * @throws SQLException if a migration fails, later migrations are not attempted.
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                    + "version INT PRIMARY KEY, "
+                    + "script VARCHAR(255) NOT NULL, "
+                    + "installed_on TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+
+        int current = currentVersion(connection);
+        int applied = 0;
+        for (String script : MIGRATIONS) {
+            int version = versionOf(script);
+            if (version <= current) {
+                continue;
+            }
+            apply(connection, script, version);
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * @param connection
+     * @return Highest version applied to the database, 0 for a new database.
+     * @throws SQLException
+     */
+    public static int currentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static void apply(Connection connection, String script, int version) throws SQLException {
+        InputStream in = MigrationRunner.class.getClassLoader().getResourceAsStream(LOCATION + script);
+        if (in == null) {
+            throw new SQLException("Migration script not found on the classpath: " + LOCATION + script);
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            RunScript.execute(connection, reader);
+        } catch (IOException e) {
+            throw new SQLException("Could not read migration " + script, e);
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO schema_version (version, script) VALUES (?, ?)")) {
+            ps.setInt(1, version);
+            ps.setString(2, script);
+            ps.executeUpdate();
+        }
+        System.out.println("Applied schema migration " + script);
+    }
+
+    private static int versionOf(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+}
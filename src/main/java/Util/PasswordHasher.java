@@ -0,0 +1,104 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2-HMAC-SHA256 password hashes.
+ *
+ * A hash is stored as "pbkdf2-sha256$iterations$salt$hash" with base64 salt and hash, so the work factor
+ * can be raised later: hashes made with other iterations still verify, and needsRehash() tells the caller
+ * to replace them. Anything without the prefix is a password saved in plaintext before hashing existed.
+ *
+ * Hashing is deliberately slow (a few hundred milliseconds at the default work factor), run it on the
+ * password executor, not on a request or database thread.
+ */
+public class PasswordHasher {
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param iterations Work factor of new hashes, PBKDF2 rounds.
+     */
+    public PasswordHasher(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * @param password Plaintext password.
+     * @return Salted hash to store, including the work factor.
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * Check a password against a stored hash, or against a legacy plaintext password. Compares in constant time.
+     * @param password Plaintext password from the request.
+     * @param stored Stored hash, or legacy plaintext.
+     * @return true if the password matches.
+     */
+    public boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            int storedIterations = Integer.parseInt(parts[0]);
+            byte[] salt = Base64.getDecoder().decode(parts[1]);
+            byte[] expected = Base64.getDecoder().decode(parts[2]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, storedIterations));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param stored Stored hash, or legacy plaintext.
+     * @return true if stored is plaintext or was hashed with another work factor, and should be hashed again
+     * the next time the password is known.
+     */
+    public boolean needsRehash(String stored) {
+        return stored == null || !stored.startsWith(PREFIX + iterations + "$");
+    }
+
+    /**
+     * @return Work factor of new hashes.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // PBKDF2WithHmacSHA256 is part of every Java platform.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package Util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket rate limiter with one bucket per key, such as an account_id or a remote address.
+ *
+ * Each bucket holds up to burst tokens and gains perSecond tokens a second, a request takes one.
+ * A bucket is stored as a single long, the time at which it will be full again (the generic cell rate
+ * algorithm, which answers exactly like a token bucket), so taking a token is a lock-free map lookup and
+ * one compare-and-set. A request may take several tokens at once, e.g. one per message of a batch.
+ *
+ * At most maxKeys buckets are kept. When the table is full, buckets that are full again are swept out, they
+ * would answer the same as a new one. If every bucket is still in use the new keys share one overflow bucket
+ * until the next sweep, so memory stays bounded even when a client cycles through addresses.
+ */
+public class RateLimiter {
+    private final long intervalNanos;
+    private final int burst;
+    private final long burstNanos;
+    private final long maxKeys;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong overflow = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong nextSweep = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param perSecond Tokens added to a bucket per second.
+     * @param burst Most tokens a bucket holds, the requests a key may make at once.
+     * @param maxKeys Most buckets kept in memory.
+     */
+    public RateLimiter(double perSecond, int burst, long maxKeys) {
+        this(perSecond, burst, maxKeys, System::nanoTime);
+    }
+
+    /**
+     * @param perSecond Tokens added to a bucket per second.
+     * @param burst Most tokens a bucket holds, the requests a key may make at once.
+     * @param maxKeys Most buckets kept in memory.
+     * @param clock Current time in nanoseconds.
+     */
+    public RateLimiter(double perSecond, int burst, long maxKeys, LongSupplier clock) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+        this.burst = burst;
+        this.burstNanos = intervalNanos * burst;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+    }
+
+    /**
+     * Take a token from the key's bucket.
+     * @param key
+     * @return 0 if the request may go ahead, otherwise the nanoseconds until the bucket has a token again.
+     */
+    public long acquire(String key) {
+        return acquire(key, 1);
+    }
+
+    /**
+     * Take several tokens from the key's bucket, all or none. A request for more than burst tokens goes
+     * through only when the bucket is full, and leaves the bucket owing the rest, so the key waits until it
+     * has been paid back.
+     * @param key
+     * @param permits Tokens to take, at least 1.
+     * @return 0 if the request may go ahead, otherwise the nanoseconds until the bucket has enough tokens again.
+     */
+    public long acquire(String key, int permits) {
+        long now = clock.getAsLong();
+        AtomicLong full = buckets.get(key);
+        if (full == null) {
+            full = newBucket(key, now);
+        }
+        long cost = intervalNanos * permits;
+        long needed = intervalNanos * Math.min(permits, burst);
+        while (true) {
+            long current = full.get();
+            // The bucket is full at "current", each token taken pushes that one interval further.
+            long from = Math.max(current, now);
+            long wait = from + needed - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (full.compareAndSet(current, from + cost)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return Number of buckets in memory.
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * @return A bucket for the key, the overflow bucket if the table is full.
+     */
+    private AtomicLong newBucket(String key, long now) {
+        if (buckets.size() >= maxKeys) {
+            sweep(now);
+            if (buckets.size() >= maxKeys) {
+                return overflow;
+            }
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE));
+    }
+
+    /**
+     * Removes the buckets that are full again. At most one sweep a second, by one thread, so a table full of
+     * busy keys doesn't make every new key pay for a pass over it. A token taken from a bucket while it is
+     * removed is forgotten, which only lets that key through sooner.
+     */
+    private void sweep(long now) {
+        long allowed = nextSweep.get();
+        if (now < allowed || !nextSweep.compareAndSet(allowed, now + TimeUnit.SECONDS.toNanos(1))) {
+            return;
+        }
+        buckets.values().removeIf(full -> full.get() <= now);
+    }
+
+    /**
+     * Thrown by a before-handler to turn a request away, the controller answers 429 with Retry-After.
+     */
+    public static class LimitedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfterSeconds;
+
+        /**
+         * @param waitNanos Nanoseconds until a request would be let through, from acquire().
+         */
+        public LimitedException(long waitNanos) {
+            super(null, null, false, false);
+            this.retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        }
+
+        /**
+         * @return Whole seconds to wait before retrying, at least 1.
+         */
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
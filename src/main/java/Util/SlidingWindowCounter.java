@@ -0,0 +1,215 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts events per key over a sliding time window, e.g. tag uses in the last hour.
+ *
+ * The window is split into buckets. Each key has one count per bucket, stamped with the bucket's number, so
+ * a bucket that fell out of the window is recognised by its stamp and reused without a cleanup pass. Keys
+ * without events in the window are dropped when the top keys are computed.
+ *
+ * At most maxKeys keys are kept, since keys such as tags come from user input. When the table is full a
+ * sweep, at most once a second, drops the keys with nothing left in the window and, if that isn't enough,
+ * the least counted ones down to 90% of maxKeys. The counts are lossy, not estimates with an error bound:
+ * an evicted key's events are forgotten, and it counts from 0 if it comes back. Events of a new key that
+ * arrive while the table is full and the last sweep was less than a second ago aren't counted at all. So
+ * counts are never too high, but a key can be undercounted by whatever it had when it was evicted plus what
+ * it missed between sweeps. Keys busier than the least counted 10% survive the sweeps, which is what top()
+ * needs. A flood of one-off keys mostly evicts other rare keys.
+ */
+public class SlidingWindowCounter {
+    private final int bucketCount;
+    private final long bucketMillis;
+    private final long maxKeys;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param bucketCount Number of buckets in the window.
+     * @param bucketMillis Length of one bucket, the window is bucketCount * bucketMillis long.
+     * @param maxKeys Most keys counted at once.
+     */
+    public SlidingWindowCounter(int bucketCount, long bucketMillis, long maxKeys) {
+        this(bucketCount, bucketMillis, maxKeys, System::currentTimeMillis);
+    }
+
+    /**
+     * @param bucketCount Number of buckets in the window.
+     * @param bucketMillis Length of one bucket, the window is bucketCount * bucketMillis long.
+     * @param maxKeys Most keys counted at once.
+     * @param clock Current time in milliseconds.
+     */
+    public SlidingWindowCounter(int bucketCount, long bucketMillis, long maxKeys, LongSupplier clock) {
+        this.bucketCount = bucketCount;
+        this.bucketMillis = bucketMillis;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+    }
+
+    /**
+     * Count one event for the key, now. A new key isn't counted if the table is full and can't be swept yet.
+     * @param key
+     */
+    public void increment(String key) {
+        long now = clock.getAsLong();
+        long bucket = now / bucketMillis;
+        while (true) {
+            Window window = windows.get(key);
+            if (window == null) {
+                if (windows.size() >= maxKeys && !makeRoom(now, bucket)) {
+                    return;
+                }
+                window = windows.computeIfAbsent(key, k -> new Window(bucketCount));
+            }
+            if (window.add(bucket)) {
+                return;
+            }
+            // A sweep or top() retired this window between the lookup and the add, and is removing it. Use a new one.
+            windows.remove(key, window);
+        }
+    }
+
+    /**
+     * @return Number of keys in memory.
+     */
+    public int size() {
+        return windows.size();
+    }
+
+    /**
+     * Drops the keys with nothing left in the window, then the least counted ones (ties by key) down to 90% of
+     * maxKeys, so the next new keys don't each need a sweep. At most one sweep a second, by one thread.
+     * @return true if there is room for a new key.
+     */
+    private boolean makeRoom(long now, long bucket) {
+        long allowed = nextSweep.get();
+        if (now >= allowed && nextSweep.compareAndSet(allowed, now + 1000)) {
+            List<Map.Entry<String, Long>> counted = new ArrayList<>(windows.size());
+            for (Map.Entry<String, Window> entry : windows.entrySet()) {
+                long count = entry.getValue().sumOrRetire(bucket);
+                if (count == 0) {
+                    windows.remove(entry.getKey(), entry.getValue());
+                } else {
+                    counted.add(Map.entry(entry.getKey(), count));
+                }
+            }
+            long excess = counted.size() - maxKeys * 9 / 10;
+            if (excess > 0) {
+                counted.sort(Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+                for (int i = 0; i < excess; i++) {
+                    Window window = windows.get(counted.get(i).getKey());
+                    if (window != null) {
+                        window.retire();
+                        windows.remove(counted.get(i).getKey(), window);
+                    }
+                }
+            }
+        }
+        return windows.size() < maxKeys;
+    }
+
+    /**
+     * @param key
+     * @return Events counted for the key in the window.
+     */
+    public long count(String key) {
+        Window window = windows.get(key);
+        return window == null ? 0 : window.sum(clock.getAsLong() / bucketMillis);
+    }
+
+    /**
+     * The keys with the most events in the window, most first, ties by key.
+     * Costs one pass over the keys in memory, at most maxKeys.
+     * @param limit Most keys to return.
+     * @return Keys and their counts.
+     */
+    public List<Map.Entry<String, Long>> top(int limit) {
+        long bucket = clock.getAsLong() / bucketMillis;
+        Comparator<Map.Entry<String, Long>> order = Map.Entry.<String, Long>comparingByValue()
+                .thenComparing(Map.Entry.<String, Long>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<String, Long>> best = new PriorityQueue<>(order);
+        for (Map.Entry<String, Window> entry : windows.entrySet()) {
+            long count = entry.getValue().sumOrRetire(bucket);
+            if (count == 0) {
+                windows.remove(entry.getKey(), entry.getValue());
+                continue;
+            }
+            best.add(Map.entry(entry.getKey(), count));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<Map.Entry<String, Long>> top = new ArrayList<>(best);
+        top.sort(order.reversed());
+        return top;
+    }
+
+    /**
+     * One key's counts by bucket.
+     */
+    private static class Window {
+        private final long[] buckets;
+        private final long[] counts;
+        private boolean retired;
+
+        Window(int bucketCount) {
+            buckets = new long[bucketCount];
+            counts = new long[bucketCount];
+            Arrays.fill(buckets, -1);
+        }
+
+        /**
+         * @return false if the window was retired and must not be used any more.
+         */
+        synchronized boolean add(long bucket) {
+            if (retired) {
+                return false;
+            }
+            int slot = (int) (bucket % buckets.length);
+            if (buckets[slot] != bucket) {
+                buckets[slot] = bucket;
+                counts[slot] = 0;
+            }
+            counts[slot]++;
+            return true;
+        }
+
+        synchronized long sum(long bucket) {
+            long sum = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] > bucket - buckets.length) {
+                    sum += counts[i];
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * Stop counting in this window, it is being removed.
+         */
+        synchronized void retire() {
+            retired = true;
+        }
+
+        /**
+         * @return The sum, after retiring the window if it is 0.
+         */
+        synchronized long sumOrRetire(long bucket) {
+            long sum = sum(bucket);
+            if (sum == 0) {
+                retired = true;
+            }
+            return sum;
+        }
+    }
+}
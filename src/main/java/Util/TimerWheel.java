@@ -0,0 +1,93 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel for expiring many keys with coarse deadlines, such as session TTLs.
+ *
+ * Time is cut into ticks, and a key is queued in the slot of its deadline's tick, modulo the number of slots.
+ * Scheduling is one lock-free queue offer. Each tick() drains the slots that came due since the last one and
+ * expires the keys whose deadline passed, keys a full turn or more away go back in their slot. The cost is
+ * proportional to the keys that expire, not to all keys, and deadlines are rounded up to the next tick.
+ */
+public class TimerWheel<K> {
+    private final long tickMillis;
+    private final ConcurrentLinkedQueue<Entry<K>>[] slots;
+    private final Consumer<K> onExpiry;
+    private long lastTick;
+
+    /**
+     * @param slotCount Number of slots, deadlines further away than slotCount ticks take more than one turn.
+     * @param tickMillis Length of one tick.
+     * @param now Current time in milliseconds, the wheel starts at this tick.
+     * @param onExpiry Called with each key once its deadline has passed, on the thread calling tick().
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(int slotCount, long tickMillis, long now, Consumer<K> onExpiry) {
+        this.tickMillis = tickMillis;
+        this.slots = (ConcurrentLinkedQueue<Entry<K>>[]) new ConcurrentLinkedQueue<?>[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.onExpiry = onExpiry;
+        this.lastTick = now / tickMillis;
+    }
+
+    /**
+     * Expire the key at the deadline. Thread safe.
+     * @param key
+     * @param deadline Time in milliseconds.
+     */
+    public void schedule(K key, long deadline) {
+        long tick = (deadline + tickMillis - 1) / tickMillis;
+        slots[(int) (tick % slots.length)].add(new Entry<>(key, tick));
+    }
+
+    /**
+     * Expire every key whose deadline has passed. Called by one thread at a time, about once per tick.
+     * @param now Current time in milliseconds.
+     * @return Number of keys expired.
+     */
+    public synchronized int tick(long now) {
+        long current = now / tickMillis;
+        // After a long pause every slot is due once.
+        long from = Math.max(lastTick + 1, current - slots.length + 1);
+        int expired = 0;
+        List<Entry<K>> later = new ArrayList<>();
+        for (long t = from; t <= current; t++) {
+            ConcurrentLinkedQueue<Entry<K>> slot = slots[(int) (t % slots.length)];
+            // Only what is in the slot now, a concurrent schedule() may add more.
+            for (int n = slot.size(); n > 0; n--) {
+                Entry<K> entry = slot.poll();
+                if (entry == null) {
+                    break;
+                }
+                if (entry.tick <= current) {
+                    onExpiry.accept(entry.key);
+                    expired++;
+                } else {
+                    later.add(entry);
+                }
+            }
+            for (Entry<K> entry : later) {
+                slot.add(entry);
+            }
+            later.clear();
+        }
+        lastTick = Math.max(lastTick, current);
+        return expired;
+    }
+
+    private static class Entry<K> {
+        final K key;
+        final long tick;
+
+        Entry(K key, long tick) {
+            this.key = key;
+            this.tick = tick;
+        }
+    }
+}
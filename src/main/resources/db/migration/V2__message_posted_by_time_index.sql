@@ -0,0 +1,2 @@
+-- Per-account lookups (posted_by = ?) read a contiguous index range, already ordered by time and id.
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch, message_id);
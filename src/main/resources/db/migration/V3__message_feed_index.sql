@@ -0,0 +1,4 @@
+-- Feed pages (posted_by = ? ORDER BY time_posted_epoch DESC, message_id DESC) read the index in order and stop
+-- after one page. H2 doesn't scan an index backwards, so this replaces the ascending index from V2.
+create index if not exists message_posted_by_time_desc_idx on message (posted_by, time_posted_epoch desc, message_id desc);
+drop index if exists message_posted_by_time_idx;
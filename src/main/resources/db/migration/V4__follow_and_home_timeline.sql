@@ -0,0 +1,27 @@
+-- Who follows whom. The primary key answers "who does X follow", the second index "who follows X".
+create table if not exists follow (
+    follower_id int not null,
+    followee_id int not null,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
+create index if not exists follow_followee_idx on follow (followee_id, follower_id);
+-- Precomputed home timelines: one row per message per follower, written when the message is posted.
+-- Deleting a message removes it from every timeline. posted_by lets an unfollow remove the followee's rows.
+create table if not exists home_timeline (
+    owner_id int not null,
+    message_id int not null,
+    posted_by int not null,
+    time_posted_epoch bigint not null,
+    primary key (owner_id, message_id),
+    foreign key (message_id) references message(message_id) on delete cascade
+);
+-- Home pages (owner_id = ? ORDER BY owner_id, time_posted_epoch DESC, message_id DESC) read the index in order.
+create index if not exists home_timeline_owner_time_idx on home_timeline (owner_id, time_posted_epoch desc, message_id desc);
+-- Accounts with too many followers to copy each message into every timeline. Their messages are merged
+-- into their followers' home timelines when those are read.
+create table if not exists fan_out_on_read (
+    account_id int primary key,
+    foreign key (account_id) references account(account_id)
+);
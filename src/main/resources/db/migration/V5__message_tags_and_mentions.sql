@@ -0,0 +1,20 @@
+-- #tags and @mentions found in message_text, one row per message and tag or mentioned account.
+-- time_posted_epoch is copied from the message so pages are read from one index in order, newest first.
+-- Deleting a message removes its rows. The foreign key's index on message_id serves re-extraction on update.
+create table if not exists message_tag (
+    tag varchar(255) not null,
+    message_id int not null,
+    time_posted_epoch bigint not null,
+    primary key (tag, message_id),
+    foreign key (message_id) references message(message_id) on delete cascade
+);
+create index if not exists message_tag_time_idx on message_tag (tag, time_posted_epoch desc, message_id desc);
+create table if not exists message_mention (
+    account_id int not null,
+    message_id int not null,
+    time_posted_epoch bigint not null,
+    primary key (account_id, message_id),
+    foreign key (account_id) references account(account_id),
+    foreign key (message_id) references message(message_id) on delete cascade
+);
+create index if not exists message_mention_time_idx on message_mention (account_id, time_posted_epoch desc, message_id desc);
@@ -0,0 +1,67 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Per-account lookup latency (MessageDAO.getAllMessagesFromAccountId) on a large message table,
+ * with and without the (posted_by, time_posted_epoch desc, message_id desc) index from migration V3.
+ * Without it H2 falls back to the index it creates for the posted_by foreign key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkData.DB_ARGS, "-Xmx2g"})
+public class AccountMessagesBenchmark {
+    @Param({"1000000"})
+    int messages;
+
+    @Param({"10000"})
+    int accounts;
+
+    @Param({"true", "false"})
+    boolean composite_index;
+
+    MessageDAO messageDAO;
+    Random random;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(accounts, messages);
+        if (!composite_index) {
+            try (Connection connection = ConnectionUtil.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("DROP INDEX message_posted_by_time_desc_idx");
+            }
+        }
+        messageDAO = new MessageDAO();
+        random = new Random(BenchmarkData.SEED);
+    }
+
+    @Benchmark
+    public List<Message> messagesForAccount() {
+        return messageDAO.getAllMessagesFromAccountId(random.nextInt(accounts) + 1);
+    }
+}
@@ -0,0 +1,65 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Account;
+import Service.AccountService;
+import Util.PasswordHasher;
+
+/**
+ * AccountService.login for existing accounts with the right and the wrong password, and for unknown
+ * usernames. Unknown usernames aren't cached by the account index, so they always reach the database.
+ * Passwords are hashed with the default work factor, so logins with an existing username are dominated by
+ * the hash, see PasswordHashBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DB_ARGS)
+public class AccountServiceBenchmark {
+    @Param({"10000"})
+    int accounts;
+
+    AccountService accountService;
+    Random random;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(accounts, 0);
+        BenchmarkData.hashPasswords(new PasswordHasher(
+                Integer.getInteger("socialmedia.password.iterations", 600_000)).hash("password"));
+        accountService = new AccountService();
+        random = new Random(BenchmarkData.SEED);
+    }
+
+    @Benchmark
+    public Account login() {
+        return accountService.login(new Account("user" + (random.nextInt(accounts) + 1), "password"));
+    }
+
+    @Benchmark
+    public Account loginWrongPassword() {
+        return accountService.login(new Account("user" + (random.nextInt(accounts) + 1), "wrong password"));
+    }
+
+    @Benchmark
+    public Account loginUnknownUser() {
+        return accountService.login(new Account("nobody" + random.nextInt(accounts), "password"));
+    }
+}
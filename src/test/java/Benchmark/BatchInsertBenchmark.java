@@ -0,0 +1,68 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+/**
+ * Message insert throughput: one INSERT per message (the POST /messages path) against
+ * MessageDAO.addMessages (the POST /messages/batch path). Scores are messages per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DB_ARGS)
+public class BatchInsertBenchmark {
+    static final int BATCH = 500;
+    static final int ACCOUNTS = 100;
+
+    MessageDAO messageDAO;
+    List<Message> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(ACCOUNTS, 0);
+        messageDAO = new MessageDAO();
+
+        Random random = new Random(BenchmarkData.SEED);
+        batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(new Message(random.nextInt(ACCOUNTS) + 1, BenchmarkData.text(random), 1669947792L + i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void singleInserts(Blackhole bh) {
+        for (Message m : batch) {
+            bh.consume(messageDAO.addMessage(m));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<Message> batchInsert() {
+        return messageDAO.addMessages(batch);
+    }
+}
@@ -0,0 +1,112 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import Util.ConnectionUtil;
+import Util.MigrationRunner;
+
+/**
+ * Seeded data generator for the benchmarks.
+ * Benchmarks run against a private in-memory database, selected with -Dsocialmedia.db.url (see DB_ARGS),
+ * and the same seed always produces the same accounts and messages.
+ */
+public class BenchmarkData {
+    /**
+     * JVM arguments for benchmark forks, so ConnectionUtil points at an in-memory database
+     * instead of the file database in ./h2.
+     */
+    public static final String DB_ARGS = "-Dsocialmedia.db.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1";
+
+    public static final long SEED = 42L;
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Drop everything, rebuild the schema and insert the given number of accounts and messages.
+     * Accounts are named user1..userN with password "password". Messages are spread uniformly
+     * over the accounts with increasing timestamps.
+     * @param accounts Number of accounts.
+     * @param messages Number of messages.
+     */
+    public static void seed(int accounts, int messages) throws SQLException {
+        Random random = new Random(SEED);
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP ALL OBJECTS");
+            }
+            MigrationRunner.migrate(connection);
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO account (username, password) VALUES (?, ?)")) {
+                for (int i = 1; i <= accounts; i++) {
+                    ps.setString(1, "user" + i);
+                    ps.setString(2, "password");
+                    ps.addBatch();
+                    if (i % BATCH_SIZE == 0) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+            connection.commit();
+
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)")) {
+                long time = 1669947792L;
+                for (int i = 1; i <= messages; i++) {
+                    ps.setInt(1, random.nextInt(accounts) + 1);
+                    ps.setString(2, text(random));
+                    ps.setLong(3, time + i);
+                    ps.addBatch();
+                    if (i % BATCH_SIZE == 0) {
+                        ps.executeBatch();
+                        connection.commit();
+                    }
+                }
+                ps.executeBatch();
+            }
+            connection.commit();
+        }
+    }
+
+    /**
+     * Store the same password hash for every account, so logins verify a hash instead of upgrading plaintext.
+     * @param hash Hash of "password", from PasswordHasher.
+     */
+    public static void hashPasswords(String hash) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement("UPDATE account SET password = ?")) {
+            ps.setString(1, hash);
+            ps.executeUpdate();
+        }
+    }
+
+    private static final String[] WORDS = {
+        "hello", "world", "java", "coffee", "morning", "weekend", "music", "game", "update", "news",
+        "travel", "food", "photo", "friends", "work", "code", "release", "bug", "fix", "deploy",
+    };
+
+    /**
+     * @param random
+     * @return A short random message made of common words.
+     */
+    public static String text(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int words = 3 + random.nextInt(10);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+}
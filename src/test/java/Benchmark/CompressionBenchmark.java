@@ -0,0 +1,109 @@
+package Benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nixxcode.jvmbrotli.dec.BrotliInputStream;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+
+/**
+ * Bytes on the wire and latency of GET /accounts/{account_id}/messages by response encoding (none, gzip,
+ * brotli), list size and protocol (HTTP/1.1, or HTTP/2 over plain text). The time includes decoding the body
+ * on the client. The wireBytes and requests counters are totals over the run, wireBytes / requests is the size
+ * of a response body as sent. Every request is for the same account, so every response is the same list.
+ *
+ * messagesPerAccount sets the list size, with the seeded text a message is a few hundred bytes of JSON. Lists under
+ * socialmedia.compression.minSize are sent as they are whatever the client accepts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkData.DB_ARGS, "-Dsocialmedia.compression=both", "-Xmx2g"})
+public class CompressionBenchmark {
+    @Param({"identity", "gzip", "br"})
+    String encoding;
+
+    @Param({"10", "100", "1000"})
+    int messagesPerAccount;
+
+    @Param({"HTTP_1_1", "HTTP_2"})
+    HttpClient.Version version;
+
+    @Param({"100"})
+    int accounts;
+
+    Javalin app;
+    HttpClient client;
+    String baseUrl;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Wire {
+        public long wireBytes;
+        public long requests;
+    }
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(accounts, accounts * messagesPerAccount);
+        app = new SocialMediaController().startAPI().start(0);
+        client = HttpClient.newBuilder().version(version).build();
+        baseUrl = "http://localhost:" + app.port();
+    }
+
+    @TearDown
+    public void tearDown() {
+        app.stop();
+    }
+
+    @Benchmark
+    public int messagesForAccount(Wire wire) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/accounts/1/messages"))
+                .header("Accept-Encoding", encoding)
+                .build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        wire.wireBytes += response.body().length;
+        wire.requests++;
+        return decode(response).length;
+    }
+
+    private static byte[] decode(HttpResponse<byte[]> response) throws IOException {
+        String contentEncoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+        InputStream body = new ByteArrayInputStream(response.body());
+        if (contentEncoding.equals("gzip")) {
+            body = new GZIPInputStream(body);
+        } else if (contentEncoding.equals("br")) {
+            body = new BrotliInputStream(body);
+        }
+        try (InputStream in = body) {
+            return in.readAllBytes();
+        }
+    }
+}
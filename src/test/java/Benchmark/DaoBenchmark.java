@@ -0,0 +1,70 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+
+/**
+ * DAO hot paths through the pooled connections.
+ * Compare with the statement cache turned off by running with
+ * -Djmh.args="DaoBenchmark -jvmArgsAppend -Dsocialmedia.pool.statementCacheSize=0".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DB_ARGS)
+public class DaoBenchmark {
+    static final int ACCOUNTS = 1000;
+    static final int MESSAGES = 100_000;
+
+    MessageDAO messageDAO;
+    AccountDAO accountDAO;
+    Random random;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(ACCOUNTS, MESSAGES);
+        messageDAO = new MessageDAO();
+        accountDAO = new AccountDAO();
+        random = new Random(BenchmarkData.SEED);
+    }
+
+    @Benchmark
+    public Message getMessageById() {
+        return messageDAO.getMessageById(random.nextInt(MESSAGES) + 1);
+    }
+
+    @Benchmark
+    public List<Message> getAllMessagesFromAccountId() {
+        return messageDAO.getAllMessagesFromAccountId(random.nextInt(ACCOUNTS) + 1);
+    }
+
+    @Benchmark
+    public Account getAccountByUsername() {
+        return accountDAO.getAccountByUsername("user" + (random.nextInt(ACCOUNTS) + 1));
+    }
+
+    @Benchmark
+    public Message updateMessageById() {
+        return messageDAO.updateMessageById(new Message(random.nextInt(MESSAGES) + 1, 0, "updated text", 0));
+    }
+}
@@ -0,0 +1,87 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountIndex;
+import Service.MessageService;
+
+/**
+ * MessageService calls the controller makes, at several table sizes.
+ * Every benchmark method runs in its own fork on a freshly seeded database, so createMessage growing
+ * the table doesn't affect the others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkData.DB_ARGS, "-Xmx2g"})
+public class MessageServiceBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int messages;
+
+    @Param({"1000"})
+    int accounts;
+
+    // Recent message_ids kept per account for getFeedPage, 0 to always query. Try -p recentDepth=0,64.
+    @Param({"64"})
+    int recentDepth;
+
+    MessageService messageService;
+    Random random;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(accounts, messages);
+        AccountIndex accountIndex = new AccountIndex(new AccountDAO());
+        accountIndex.warm();
+        System.setProperty("socialmedia.recent.depth", Integer.toString(recentDepth));
+        messageService = new MessageService(new MessageDAO(), accountIndex);
+        random = new Random(BenchmarkData.SEED);
+    }
+
+    @TearDown
+    public void tearDown() {
+        messageService.close();
+    }
+
+    @Benchmark
+    public Message createMessage() {
+        Message m = new Message(random.nextInt(accounts) + 1, BenchmarkData.text(random), 1669947792L);
+        return messageService.createMessage(m);
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return messageService.getAllMessages();
+    }
+
+    @Benchmark
+    public List<Message> getAllMessagesFromAccount() {
+        return messageService.getAllMessagesFromAccount(random.nextInt(accounts) + 1);
+    }
+
+    @Benchmark
+    public List<Message> getFeedPage() {
+        return messageService.getFeedPage(random.nextInt(accounts) + 1, Long.MAX_VALUE, Integer.MAX_VALUE, 20);
+    }
+}
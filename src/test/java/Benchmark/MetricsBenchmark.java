@@ -0,0 +1,43 @@
+package Benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Util.Metrics;
+
+/**
+ * Cost of recording one latency, from several threads at once: with a timer kept in a field (the DAO
+ * timers) and with a lookup by labels first (the per-request timers).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class MetricsBenchmark {
+    final Metrics.Timer timer = Metrics.timer("bench_seconds", "query", "fixed");
+
+    @Benchmark
+    public void record() {
+        timer.record(ThreadLocalRandom.current().nextLong(1_000, 10_000_000));
+    }
+
+    @Benchmark
+    public void lookupAndRecord() {
+        Metrics.timer("bench_request_seconds", "method", "GET", "route", "/messages/{message_id}", "status", "200")
+                .record(ThreadLocalRandom.current().nextLong(1_000, 10_000_000));
+    }
+}
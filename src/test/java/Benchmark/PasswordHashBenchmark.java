@@ -0,0 +1,77 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountIndex;
+import Service.AccountService;
+import Util.DbExecutor;
+import Util.PasswordHasher;
+
+/**
+ * Logins and registrations per second on one thread, so per core, at each password work factor.
+ * Every account's password is already hashed with the work factor under test, so a login is an index
+ * lookup and one PBKDF2 verification. Multiply by socialmedia.password.threads for the server's ceiling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DB_ARGS)
+public class PasswordHashBenchmark {
+    @Param({"1000"})
+    int accounts;
+
+    @Param({"100000", "310000", "600000"})
+    int iterations;
+
+    PasswordHasher hasher;
+    DbExecutor hashExecutor;
+    AccountService accountService;
+    Random random;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(accounts, 0);
+        hasher = new PasswordHasher(iterations);
+        BenchmarkData.hashPasswords(hasher.hash("password"));
+
+        AccountIndex index = new AccountIndex(new AccountDAO());
+        index.warm();
+        hashExecutor = new DbExecutor(1, 100, "password-hash");
+        accountService = new AccountService(index, DbExecutor.getShared(), hasher, hashExecutor);
+        random = new Random(BenchmarkData.SEED);
+    }
+
+    @TearDown
+    public void tearDown() {
+        hashExecutor.shutdown();
+    }
+
+    @Benchmark
+    public Account login() {
+        return accountService.login(new Account("user" + (random.nextInt(accounts) + 1), "password"));
+    }
+
+    @Benchmark
+    public String hash() {
+        return hasher.hash("password");
+    }
+}
@@ -0,0 +1,54 @@
+package Benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Util.RateLimiter;
+
+/**
+ * Cost the rate limiter adds to a request that is let through, from several threads at once: building the
+ * key alone (the baseline) and building it and taking a token. With one key every thread races on the same
+ * bucket, with many keys the table lookup dominates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class RateLimiterBenchmark {
+    @Param({"1", "10000"})
+    int keys;
+
+    RateLimiter limiter;
+
+    @Setup
+    public void setUp() {
+        // Fast enough that nothing is ever turned away.
+        limiter = new RateLimiter(1e9, 1_000_000, 100_000);
+    }
+
+    @Benchmark
+    public String key() {
+        return "account:" + ThreadLocalRandom.current().nextInt(keys);
+    }
+
+    @Benchmark
+    public long acquire() {
+        return limiter.acquire("account:" + ThreadLocalRandom.current().nextInt(keys));
+    }
+}
@@ -0,0 +1,66 @@
+package Benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountIndex;
+import Service.MessageService;
+
+/**
+ * Latency of GET /messages/search's service call: ranking a query and loading the first page of 20.
+ * The benchmark text uses a 20 word vocabulary, so every query word is in about a third of all messages,
+ * the worst case for an inverted index. The index is built in setup and its build time printed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkData.DB_ARGS, "-Xmx3g"})
+public class SearchBenchmark {
+    @Param({"1000000"})
+    int messages;
+
+    @Param({"coffee", "morning coffee", "deploy bug fix"})
+    String query;
+
+    MessageService messageService;
+
+    @Setup
+    public void setUp() throws SQLException {
+        BenchmarkData.seed(1000, messages);
+        messageService = new MessageService(new MessageDAO(), new AccountIndex(new AccountDAO()));
+
+        long start = System.nanoTime();
+        messageService.searchMessages("warm", 0, 1);
+        System.out.printf("%nIndexed %d messages in %d ms%n", messageService.getSearchIndexSize(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @TearDown
+    public void tearDown() {
+        messageService.close();
+    }
+
+    @Benchmark
+    public List<Message> search() {
+        return messageService.searchMessages(query, 0, 20);
+    }
+}
@@ -0,0 +1,105 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Util.JsonUtil;
+
+/**
+ * Per-request JSON serialization cost of a message list response.
+ * perRequestMapper is what the controller used to do: build a new ObjectMapper, serialize to a String
+ * and encode that String for the response. sharedWriter is the current path: a pre-built ObjectWriter
+ * streaming straight into the response output stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"1", "100", "10000"})
+    int messages;
+
+    List<Message> list;
+    Message single;
+    OutputStream sink;
+
+    @Setup
+    public void setUp() {
+        list = new ArrayList<>(messages);
+        for (int i = 1; i <= messages; i++) {
+            list.add(new Message(i, i % 50 + 1, "benchmark message number " + i, 1669947792L + i));
+        }
+        single = list.get(0);
+    }
+
+    @Setup
+    public void setUpSink(Blackhole bh) {
+        sink = new BlackholeOutputStream(bh);
+    }
+
+    @Benchmark
+    public void perRequestMapperList() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        sink.write(mapper.writeValueAsString(list).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public void sharedWriterList() throws IOException {
+        JsonUtil.MESSAGE_LIST_WRITER.writeValue(sink, list);
+    }
+
+    @Benchmark
+    public void perRequestMapperSingle() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        sink.write(mapper.writeValueAsString(single).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public void sharedWriterSingle() throws IOException {
+        JsonUtil.MESSAGE_WRITER.writeValue(sink, single);
+    }
+
+    /**
+     * Stands in for the servlet output stream, consuming bytes without keeping them.
+     */
+    static class BlackholeOutputStream extends OutputStream {
+        private final Blackhole bh;
+
+        BlackholeOutputStream(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public void write(int b) {
+            bh.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bh.consume(b);
+            bh.consume(len);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+
+/**
+ * Platform-thread vs virtual-thread request execution (-Dsocialmedia.server.threads) under a closed-loop
+ * load of many concurrent clients, each calling GET /accounts/{account_id}/messages over HTTP.
+ * Throughput mode gives the maximum throughput, SampleTime mode gives the p50/p99 latency.
+ *
+ * The clients outnumber both the platform thread pool (socialmedia.server.maxThreads) and the connection
+ * pool on purpose. Virtual threads need Java 21, run the jmh profile with JAVA_HOME pointing at one,
+ * otherwise both modes use platform threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(256)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkData.DB_ARGS, "-Dsocialmedia.server.maxThreads=64", "-Xmx2g"})
+public class ServerThreadsBenchmark {
+    @Param({"platform", "virtual"})
+    String threads;
+
+    @Param({"100000"})
+    int messages;
+
+    @Param({"1000"})
+    int accounts;
+
+    Javalin app;
+    HttpClient client;
+    String baseUrl;
+
+    @Setup
+    public void setUp() throws SQLException {
+        System.setProperty("socialmedia.server.threads", threads);
+        BenchmarkData.seed(accounts, messages);
+        app = new SocialMediaController().startAPI().start(0);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        baseUrl = "http://localhost:" + app.port();
+    }
+
+    @TearDown
+    public void tearDown() {
+        app.stop();
+    }
+
+    @Benchmark
+    public int messagesForAccount() throws IOException, InterruptedException {
+        int accountId = ThreadLocalRandom.current().nextInt(accounts) + 1;
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/accounts/" + accountId + "/messages"))
+                .build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        return response.statusCode();
+    }
+}
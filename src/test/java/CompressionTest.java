@@ -0,0 +1,188 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nixxcode.jvmbrotli.common.BrotliLoader;
+import com.nixxcode.jvmbrotli.dec.BrotliInputStream;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CompressionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and create a new webClient and ObjectMapper. The app is started
+     * by each test, after it has picked the compression.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        webClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("socialmedia.compression");
+        if (app != null) {
+            app.stop();
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept-Encoding: gzip, after adding enough
+     * messages for a response larger than the minimum size
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: gzip of the same list that is sent uncompressed without Accept-Encoding
+     */
+    @Test
+    public void largeListIsGzipped() throws IOException, InterruptedException {
+        start(null);
+        addMessages(50);
+
+        HttpResponse<byte[]> plain = get("/messages", null);
+        Assert.assertFalse(plain.headers().firstValue("Content-Encoding").isPresent());
+        HttpResponse<byte[]> gzipped = get("/messages", "gzip");
+        Assert.assertEquals(200, gzipped.statusCode());
+        Assert.assertEquals("gzip", gzipped.headers().firstValue("Content-Encoding").orElse(null));
+        Assert.assertTrue(gzipped.body().length < plain.body().length);
+        Assert.assertEquals(messages(plain.body()),
+                messages(new GZIPInputStream(new ByteArrayInputStream(gzipped.body())).readAllBytes()));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 with Accept-Encoding: gzip
+     *
+     * Expected Response:
+     *  Status Code: 200, not compressed since the message is smaller than the minimum size
+     */
+    @Test
+    public void smallResponseIsNotCompressed() throws IOException, InterruptedException {
+        start(null);
+        HttpResponse<byte[]> response = get("/messages/1", "gzip");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("Content-Encoding").isPresent());
+        Assert.assertEquals("Accept-Encoding", response.headers().firstValue("Vary").orElse(null));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept-Encoding: br, gzip
+     * with -Dsocialmedia.compression=both
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: brotli of the same list that is sent uncompressed without Accept-Encoding
+     */
+    @Test
+    public void brotliIsPreferredWhenBothAreOn() throws IOException, InterruptedException {
+        Assume.assumeTrue(BrotliLoader.isBrotliAvailable());
+        start("both");
+        addMessages(50);
+
+        HttpResponse<byte[]> plain = get("/messages", null);
+        HttpResponse<byte[]> compressed = get("/messages", "br, gzip");
+        Assert.assertEquals("br", compressed.headers().firstValue("Content-Encoding").orElse(null));
+        try (InputStream in = new BrotliInputStream(new ByteArrayInputStream(compressed.body()))) {
+            Assert.assertEquals(messages(plain.body()), messages(in.readAllBytes()));
+        }
+        Assert.assertEquals("gzip", get("/messages", "gzip").headers().firstValue("Content-Encoding").orElse(null));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept-Encoding: gzip
+     * with -Dsocialmedia.compression=none
+     *
+     * Expected Response:
+     *  Status Code: 200, not compressed
+     */
+    @Test
+    public void compressionCanBeTurnedOff() throws IOException, InterruptedException {
+        start("none");
+        addMessages(50);
+        HttpResponse<byte[]> response = get("/messages", "gzip");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("Content-Encoding").isPresent());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages with an HTTP/2 client over plain text
+     *
+     * Expected Response:
+     *  Status Code: 200 over HTTP/2
+     */
+    @Test
+    public void http2OverPlainText() throws IOException, InterruptedException {
+        start(null);
+        HttpClient h2Client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        // The first request upgrades the connection, the second is sent on it.
+        h2Client.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = h2Client.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(HttpClient.Version.HTTP_2, response.version());
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792L)),
+                messages(response.body().getBytes()));
+    }
+
+    private void start(String compression) throws InterruptedException {
+        if (compression != null) {
+            System.setProperty("socialmedia.compression", compression);
+        }
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    private void addMessages(int count) throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"posted_by\":1, \"message_text\": \"message number ").append(i)
+                    .append(" of a list that is long enough to be worth compressing\", \"time_posted_epoch\": ")
+                    .append(1669947800 + i).append("}");
+        }
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(body.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<byte[]> get(String path, String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path));
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private List<Message> messages(byte[] json) throws IOException {
+        return objectMapper.readValue(json, new TypeReference<List<Message>>(){});
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 with the ETag of the previous response,
+     * then again after PATCH localhost:8080/messages/1
+     *
+     * Expected Response:
+     *  Status Code: 304 without a body while the message is unchanged, then 200 with the new message and ETag
+     */
+    @Test
+    public void messageRevalidates() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages/1", null);
+        Assert.assertEquals(200, response.statusCode());
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        Assert.assertNotNull(etag);
+        Assert.assertEquals(etag, get("/messages/1", null).headers().firstValue("ETag").orElse(null));
+
+        response = get("/messages/1", etag);
+        Assert.assertEquals(304, response.statusCode());
+        Assert.assertEquals("", response.body());
+        Assert.assertTrue(etag.startsWith("W/\""));
+        // Weak comparison, the tag matches without its W/ too.
+        Assert.assertEquals(304, get("/messages/1", "\"other\", " + etag.substring(2)).statusCode());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        response = get("/messages/1", etag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(1, 1, "updated", 1669947792L),
+                objectMapper.readValue(response.body(), Message.class));
+        Assert.assertNotEquals(etag, response.headers().firstValue("ETag").orElse(null));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/100, which doesn't exist
+     *
+     * Expected Response:
+     *  Status Code: 200 with an empty body and no ETag
+     */
+    @Test
+    public void missingMessageHasNoETag() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages/100", "*");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("", response.body());
+        Assert.assertFalse(response.headers().firstValue("ETag").isPresent());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages with the ETag of the previous response,
+     * then again after POST localhost:8080/messages
+     *
+     * Expected Response:
+     *  Status Code: 304 while the list is unchanged, then 200
+     */
+    @Test
+    public void accountMessagesRevalidate() throws IOException, InterruptedException {
+        String etag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElse(null);
+        Assert.assertEquals(304, get("/accounts/1/messages", etag).statusCode());
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", \"time_posted_epoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = get("/accounts/1/messages", etag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertNotEquals(etag, response.headers().firstValue("ETag").orElse(null));
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
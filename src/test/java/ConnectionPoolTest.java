@@ -0,0 +1,149 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    JdbcDataSource dataSource;
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a small pool against a private in-memory database.
+     */
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        pool = new ConnectionPool(dataSource, 0, 2, 200, 60000, 0, 60000, 2);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Closing a borrowed connection should return it to the pool instead of opening a new one.
+     */
+    @Test
+    public void closedConnectionIsReused() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            Assert.assertFalse(connection.isClosed());
+            Assert.assertEquals(1, pool.getActiveCount());
+        }
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        try (Connection connection = pool.getConnection()) {
+            Assert.assertTrue(connection.isValid(1));
+        }
+        Assert.assertEquals(1, pool.getTotalCount());
+        Assert.assertEquals(2, pool.getAcquireCount());
+    }
+
+    /**
+     * Borrowing more than maxSize connections should time out instead of opening more.
+     */
+    @Test
+    public void exhaustedPoolTimesOut() throws SQLException {
+        try (Connection c1 = pool.getConnection(); Connection c2 = pool.getConnection()) {
+            Assert.assertNotSame(c1, c2);
+            Assert.assertThrows(SQLException.class, () -> pool.getConnection());
+            Assert.assertEquals(1, pool.getTimeoutCount());
+            Assert.assertEquals(2, pool.getTotalCount());
+        }
+        // Permits are given back once the connections are closed.
+        try (Connection connection = pool.getConnection()) {
+            Assert.assertFalse(connection.isClosed());
+            Assert.assertEquals(1, pool.getActiveCount());
+        }
+    }
+
+    /**
+     * A connection held past the leak threshold is reported once, without capturing borrow stack traces.
+     */
+    @Test
+    public void heldConnectionIsReportedAsLeak() throws SQLException, InterruptedException {
+        pool.shutdown();
+        pool = new ConnectionPool(dataSource, 0, 2, 200, 60000, 50, 20, 2);
+        try (Connection connection = pool.getConnection()) {
+            Assert.assertFalse(connection.isClosed());
+            Thread.sleep(300);
+            Assert.assertEquals(1, pool.getLeakCount());
+        }
+    }
+
+    /**
+     * A connection can't be used after it has been handed back.
+     */
+    @Test
+    public void closedConnectionCannotBeUsed() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        Assert.assertTrue(connection.isClosed());
+        Assert.assertThrows(SQLException.class, () -> connection.prepareStatement("SELECT 1"));
+    }
+
+    /**
+     * A connection left in a transaction is rolled back and reset before the next borrower gets it.
+     */
+    @Test
+    public void openTransactionIsRolledBackOnReturn() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+        }
+        try (Connection connection = pool.getConnection()) {
+            Assert.assertTrue(connection.getAutoCommit());
+        }
+    }
+
+    /**
+     * Preparing the same SQL again on a pooled connection reuses the cached statement, with its
+     * parameters cleared.
+     */
+    @Test
+    public void preparedStatementIsCached() throws SQLException {
+        for (int i = 1; i <= 3; i++) {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement ps = connection.prepareStatement("SELECT ?")) {
+                ps.setInt(1, i);
+                try (ResultSet rs = ps.executeQuery()) {
+                    Assert.assertTrue(rs.next());
+                    Assert.assertEquals(i, rs.getInt(1));
+                }
+                Assert.assertSame(connection, ps.getConnection());
+            }
+        }
+        Assert.assertEquals(1, pool.getStatementCacheMisses());
+        Assert.assertEquals(2, pool.getStatementCacheHits());
+    }
+
+    /**
+     * The same SQL prepared twice at once gets two separate statements.
+     */
+    @Test
+    public void statementInUseIsNotShared() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps1 = connection.prepareStatement("SELECT ?");
+             PreparedStatement ps2 = connection.prepareStatement("SELECT ?")) {
+            ps1.setInt(1, 1);
+            ps2.setInt(1, 2);
+            try (ResultSet rs1 = ps1.executeQuery(); ResultSet rs2 = ps2.executeQuery()) {
+                rs1.next();
+                rs2.next();
+                Assert.assertEquals(1, rs1.getInt(1));
+                Assert.assertEquals(2, rs2.getInt(1));
+            }
+        }
+    }
+}
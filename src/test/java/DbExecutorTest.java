@@ -0,0 +1,69 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.DbExecutor;
+
+public class DbExecutorTest {
+    DbExecutor executor;
+    CountDownLatch release;
+
+    /**
+     * Before every test, create an executor with one thread and room for one waiting task.
+     */
+    @Before
+    public void setUp() {
+        executor = new DbExecutor(1, 1);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    /**
+     * Tasks run on the executor and complete with their result.
+     */
+    @Test
+    public void taskCompletesWithResult() {
+        Assert.assertEquals("done", executor.supply(() -> "done").join());
+        Assert.assertEquals(0, executor.getRejectedCount());
+    }
+
+    /**
+     * Once the thread is busy and the queue is full, new tasks fail right away instead of waiting.
+     */
+    @Test
+    public void fullQueueRejectsTask() {
+        CompletableFuture<String> running = executor.supply(this::blocked);
+        CompletableFuture<String> queued = executor.supply(() -> "queued");
+        CompletableFuture<String> rejected = executor.supply(() -> "rejected");
+
+        Assert.assertTrue(rejected.isCompletedExceptionally());
+        CompletionException e = Assert.assertThrows(CompletionException.class, rejected::join);
+        Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        Assert.assertEquals(1, executor.getRejectedCount());
+
+        // The accepted tasks still run once the thread is free.
+        release.countDown();
+        Assert.assertEquals("running", running.join());
+        Assert.assertEquals("queued", queued.join());
+    }
+
+    private String blocked() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "running";
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.GroupCommitter;
+import Util.ConnectionUtil;
+
+public class GroupCommitterTest {
+    MessageDAO messageDAO;
+    GroupCommitter groupCommitter;
+
+    /**
+     * Before every test, reset the database and start a group committer that waits up to 20ms for a batch.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+        groupCommitter = new GroupCommitter(messageDAO, 16, 20, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        groupCommitter.close();
+    }
+
+    /**
+     * Concurrent submits are saved in shared transactions and every caller gets its own message_id.
+     */
+    @Test
+    public void concurrentSubmitsShareBatches() {
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            futures.add(groupCommitter.submit(new Message(1, "group commit " + i, 1669947792L + i)));
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < futures.size(); i++) {
+            Message saved = futures.get(i).join();
+            Assert.assertEquals("group commit " + i, saved.getMessage_text());
+            ids.add(saved.getMessage_id());
+            Assert.assertEquals(saved, messageDAO.getMessageById(saved.getMessage_id()));
+        }
+        Assert.assertEquals(40, ids.size());
+        Assert.assertEquals(40, groupCommitter.getMessageCount());
+        // 40 messages in batches of at most 16
+        Assert.assertTrue(groupCommitter.getBatchCount() >= 3);
+        Assert.assertTrue(groupCommitter.getBatchCount() < 40);
+    }
+
+    /**
+     * The after-commit work gets each batch once, callers are answered before it completes, and the writer
+     * goes on with the next batch without waiting for it.
+     */
+    @Test
+    public void afterCommitRunsOncePerBatch() {
+        groupCommitter.close();
+        List<List<Message>> batches = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        groupCommitter = new GroupCommitter(messageDAO, 16, 20, 1000, saved -> {
+            batches.add(saved);
+            return release;
+        });
+
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            futures.add(groupCommitter.submit(new Message(1, "after commit " + i, 1669947792L + i)));
+        }
+        // Every batch is committed and answered while the first callback is still pending.
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals("after commit " + i, futures.get(i).join().getMessage_text());
+        }
+        Assert.assertFalse(release.isDone());
+
+        release.complete(null);
+        int handed = 0;
+        for (List<Message> batch : batches) {
+            handed += batch.size();
+        }
+        Assert.assertEquals(40, handed);
+        Assert.assertEquals(groupCommitter.getBatchCount(), batches.size());
+    }
+
+    /**
+     * A failure after the commit is logged, callers still get their saved message.
+     */
+    @Test
+    public void afterCommitFailureKeepsResults() {
+        groupCommitter.close();
+        groupCommitter = new GroupCommitter(messageDAO, 16, 20, 1000, saved -> {
+            throw new IllegalStateException("cache is broken");
+        });
+        Message saved = groupCommitter.submit(new Message(1, "saved anyway", 1669947792L)).join();
+        Assert.assertEquals(saved, messageDAO.getMessageById(saved.getMessage_id()));
+
+        groupCommitter.close();
+        groupCommitter = new GroupCommitter(messageDAO, 16, 20, 1000,
+                batch -> CompletableFuture.failedFuture(new IllegalStateException("fan-out failed")));
+        Assert.assertNotNull(groupCommitter.submit(new Message(1, "saved too", 1669947792L)).join());
+    }
+
+    /**
+     * A failed batch completes its callers with null, the same as a failed single insert.
+     */
+    @Test
+    public void failedBatchCompletesWithNull() {
+        // posted_by 99 violates the foreign key
+        Message saved = groupCommitter.submit(new Message(99, "no such account", 1669947792L)).join();
+        Assert.assertNull(saved);
+    }
+
+    /**
+     * Messages queued before close() are still saved.
+     */
+    @Test
+    public void closeSavesQueuedMessages() {
+        CompletableFuture<Message> future = groupCommitter.submit(new Message(1, "last one", 1669947792L));
+        groupCommitter.close();
+        Assert.assertNotNull(future.join());
+        Assert.assertTrue(groupCommitter.submit(new Message(1, "too late", 1669947792L)).isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class HomeTimelineTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Accounts 2 and 3 are registered next to testuser1.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        register("testuser2");
+        register("testuser3");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to PUT localhost:8080/accounts/2/following/1, then posting as account 1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Account 2's home timeline has the message account 1 had before, and the new one first
+     */
+    @Test
+    public void followShowsExistingAndNewMessages() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("PUT", "/accounts/2/following/1").statusCode());
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792L)), home("/accounts/2/home"));
+
+        Message posted = postMessage(1, "test message 2", 1669947800L);
+        Assert.assertEquals(List.of(posted, new Message(1, 1, "test message 1", 1669947792L)), home("/accounts/2/home"));
+        // Not followed by account 3
+        Assert.assertEquals(List.of(), home("/accounts/3/home"));
+
+        Assert.assertEquals("[1]", send("GET", "/accounts/2/following").body());
+        Assert.assertEquals("[2]", send("GET", "/accounts/1/followers").body());
+    }
+
+    /**
+     * Sending an http request to PUT localhost:8080/accounts/2/following/2 and to PUT localhost:8080/accounts/2/following/9
+     *
+     * Expected Response:
+     *  Status Code: 400 for following yourself or an account that doesn't exist
+     */
+    @Test
+    public void followInvalidAccount() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("PUT", "/accounts/2/following/2").statusCode());
+        Assert.assertEquals(400, send("PUT", "/accounts/2/following/9").statusCode());
+        Assert.assertEquals("[]", send("GET", "/accounts/2/following").body());
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/accounts/2/following/1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Account 1's messages are gone from account 2's home timeline
+     */
+    @Test
+    public void unfollowRemovesMessages() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("PUT", "/accounts/2/following/1").statusCode());
+        Assert.assertEquals(200, send("DELETE", "/accounts/2/following/1").statusCode());
+
+        Assert.assertEquals(List.of(), home("/accounts/2/home"));
+        Assert.assertEquals("[]", send("GET", "/accounts/1/followers").body());
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/messages/1 while account 2 follows account 1
+     *
+     * Expected Response:
+     *  Response Body: The deleted message is gone from account 2's home timeline
+     */
+    @Test
+    public void deletedMessageLeavesHome() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("PUT", "/accounts/2/following/1").statusCode());
+        Assert.assertEquals(200, send("DELETE", "/messages/1").statusCode());
+
+        Assert.assertEquals(List.of(), home("/accounts/2/home"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/3/home?limit=2 while account 3 follows accounts 1 and 2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: The two newest messages of both accounts, with a Link header to the next page
+     */
+    @Test
+    public void homeIsPagedNewestFirst() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send("PUT", "/accounts/3/following/1").statusCode());
+        Assert.assertEquals(200, send("PUT", "/accounts/3/following/2").statusCode());
+        Message second = postMessage(2, "test message 2", 1669947800L);
+        Message third = postMessage(1, "test message 3", 1669947795L);
+
+        HttpResponse<String> response = send("GET", "/accounts/3/home?limit=2");
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(second, third), messages);
+        Assert.assertEquals("</accounts/3/home?before=1669947795:3&limit=2>; rel=\"next\"",
+                response.headers().firstValue("Link").orElse(null));
+
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792L)),
+                home("/accounts/3/home?before=1669947795:3&limit=2"));
+    }
+
+    private List<Message> home(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("GET", path);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> send(String method, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void register(String username) throws IOException, InterruptedException {
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    private Message postMessage(int postedBy, String text, long time) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": " + time + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+}
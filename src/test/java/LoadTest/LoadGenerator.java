@@ -0,0 +1,389 @@
+package LoadTest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Open-loop HTTP load generator for capacity planning.
+ * Starts the app in this JVM against a new H2 database in a temp directory, seeds it through the API,
+ * then sends a weighted mix of requests at a fixed arrival rate, whether or not earlier requests have
+ * finished. Latency is measured from the time each request was scheduled to start, so a stalled server
+ * shows up in the percentiles instead of slowing the load down (coordinated omission correction).
+ * The latency from when the request was actually sent is reported as well. Errors are 5xx responses
+ * and requests that failed, 4xx answers (e.g. updating a deleted message) are normal results.
+ *
+ * Run with: mvn -Pload test -Dload.args="--rate 500 --duration 30"
+ * App settings are passed as JVM arguments, e.g. -Dload.jvmArgs="-Dsocialmedia.server.threads=virtual".
+ *
+ * Options (defaults in brackets):
+ *   --rate        requests per second [200]
+ *   --duration    measured seconds [30]
+ *   --warmup      seconds of load before measuring [5]
+ *   --arrival     poisson or uniform gaps between requests [poisson]
+ *   --mix         operation weights [register=1,login=10,post=15,read=40,read-account=20,page=5,update=5,delete=4]
+ *   --accounts    accounts registered before the run [1000]
+ *   --messages    messages posted before the run [10000]
+ *   --seed        random seed for the workload [42]
+ */
+public class LoadGenerator {
+    /**
+     * Requests in the mix.
+     */
+    enum Operation {
+        REGISTER("register"),
+        LOGIN("login"),
+        POST("post"),
+        READ("read"),
+        READ_ACCOUNT("read-account"),
+        PAGE("page"),
+        UPDATE("update"),
+        DELETE("delete");
+
+        final String name;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        static Operation byName(String name) {
+            for (Operation op : values()) {
+                if (op.name.equals(name)) {
+                    return op;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation " + name);
+        }
+    }
+
+    private static final long LOWEST = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long HIGHEST = TimeUnit.MINUTES.toNanos(2);
+    private static final int SEED_BATCH = 1000;
+
+    private final Map<String, String> options;
+    private final String baseUrl;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Random random;
+
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    private final int accountCount;
+    private final AtomicInteger maxMessageId = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastMeasuredDone = new AtomicLong();
+    private long measureFrom;
+    private int maxInFlight;
+    private int registered;
+
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+
+    /**
+     * @param options Parsed command line options.
+     * @param baseUrl URL of the running app.
+     */
+    LoadGenerator(Map<String, String> options, String baseUrl) {
+        this.options = options;
+        this.baseUrl = baseUrl;
+        this.random = new Random(Long.parseLong(options.get("seed")));
+        this.accountCount = Integer.parseInt(options.get("accounts"));
+
+        List<Operation> ops = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int total = 0;
+        for (String entry : options.get("mix").split(",")) {
+            String[] parts = entry.split("=");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                total += weight;
+                ops.add(Operation.byName(parts[0].trim()));
+                weights.add(total);
+            }
+        }
+        this.operations = ops.toArray(new Operation[0]);
+        this.cumulativeWeights = weights.stream().mapToInt(Integer::intValue).toArray();
+        for (Operation op : operations) {
+            stats.put(op, new Stats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+
+        // Must be set before anything touches ConnectionUtil.
+        Path dir = Files.createTempDirectory("socialmedia-load");
+        System.setProperty("socialmedia.db.url", "jdbc:h2:" + dir.resolve("db").toAbsolutePath() + ";");
+
+        Javalin app = new SocialMediaController().startAPI().start(0);
+        try {
+            LoadGenerator generator = new LoadGenerator(options, "http://localhost:" + app.port());
+            generator.seed();
+            generator.run();
+            generator.report(System.out);
+        } finally {
+            app.stop();
+            ConnectionUtil.getPool().shutdown();
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.exit(0);
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        options.put("rate", "200");
+        options.put("duration", "30");
+        options.put("warmup", "5");
+        options.put("arrival", "poisson");
+        options.put("mix", "register=1,login=10,post=15,read=40,read-account=20,page=5,update=5,delete=4");
+        options.put("accounts", "1000");
+        options.put("messages", "10000");
+        options.put("seed", "42");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--") || !options.containsKey(args[i].substring(2))) {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Register the accounts and post the messages the run works on, through the API.
+     */
+    void seed() throws IOException, InterruptedException {
+        for (int i = 1; i <= accountCount; i++) {
+            HttpResponse<String> response = client.send(
+                    post("/register", "{\"username\":\"user" + i + "\",\"password\":\"password\"}"),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Registering user" + i + " failed with " + response.statusCode());
+            }
+        }
+
+        int messages = Integer.parseInt(options.get("messages"));
+        for (int from = 0; from < messages; from += SEED_BATCH) {
+            StringBuilder body = new StringBuilder("[");
+            for (int i = from; i < Math.min(from + SEED_BATCH, messages); i++) {
+                if (i > from) {
+                    body.append(',');
+                }
+                body.append(messageJson(random.nextInt(accountCount) + 1));
+            }
+            body.append(']');
+            HttpResponse<String> response = client.send(post("/messages/batch", body.toString()),
+                    HttpResponse.BodyHandlers.ofString());
+            for (JsonNode result : mapper.readTree(response.body())) {
+                maxMessageId.accumulateAndGet(result.path("message").path("message_id").asInt(), Math::max);
+            }
+        }
+    }
+
+    /**
+     * Send requests at the configured arrival rate for warmup + duration, then wait for the stragglers.
+     */
+    void run() throws InterruptedException {
+        double rate = Double.parseDouble(options.get("rate"));
+        boolean poisson = options.get("arrival").equals("poisson");
+        double meanGapNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+
+        long start = System.nanoTime();
+        measureFrom = start + TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+
+        long intended = start;
+        while (intended < end) {
+            long now = System.nanoTime();
+            if (now < intended) {
+                LockSupport.parkNanos(intended - now);
+                continue;
+            }
+            // Behind schedule: send right away, latency still counts from the intended time.
+            send(pickOperation(), intended, intended >= measureFrom);
+            double gap = poisson ? -Math.log(1 - random.nextDouble()) * meanGapNanos : meanGapNanos;
+            intended += (long) gap;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private Operation pickOperation() {
+        int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (r < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void send(Operation op, long intended, boolean measured) {
+        HttpRequest request = buildRequest(op);
+        long sent = System.nanoTime();
+        maxInFlight = Math.max(maxInFlight, inFlight.incrementAndGet());
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            long done = System.nanoTime();
+            boolean ok = error == null && response.statusCode() < 500;
+            if (measured) {
+                stats.get(op).record(done - intended, done - sent, ok);
+                lastMeasuredDone.accumulateAndGet(done, Math::max);
+            }
+            if (ok && op == Operation.POST && !response.body().isEmpty()) {
+                try {
+                    maxMessageId.accumulateAndGet(mapper.readTree(response.body()).path("message_id").asInt(), Math::max);
+                } catch (IOException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+            inFlight.decrementAndGet();
+        });
+    }
+
+    private HttpRequest buildRequest(Operation op) {
+        int accountId = random.nextInt(accountCount) + 1;
+        int messageId = random.nextInt(Math.max(maxMessageId.get(), 1)) + 1;
+        switch (op) {
+            case REGISTER:
+                return post("/register", "{\"username\":\"load" + (++registered) + "\",\"password\":\"password\"}");
+            case LOGIN:
+                return post("/login", "{\"username\":\"user" + accountId + "\",\"password\":\"password\"}");
+            case POST:
+                return post("/messages", messageJson(accountId));
+            case READ:
+                return get("/messages/" + messageId);
+            case READ_ACCOUNT:
+                return get("/accounts/" + accountId + "/messages");
+            case PAGE:
+                return get("/messages?after=" + messageId + "&limit=100");
+            case UPDATE:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + messageId))
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"updated " + messageId + "\"}"))
+                        .header("Content-Type", "application/json")
+                        .build();
+            case DELETE:
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + messageId)).DELETE().build();
+            default:
+                throw new IllegalArgumentException(op.name);
+        }
+    }
+
+    private String messageJson(int accountId) {
+        return "{\"posted_by\":" + accountId + ",\"message_text\":\"load test message " + random.nextInt(1_000_000)
+                + "\",\"time_posted_epoch\":" + (1669947792L + random.nextInt(1_000_000)) + "}";
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    /**
+     * Print throughput and latency percentiles per operation and in total.
+     * @param out Output.
+     */
+    void report(PrintStream out) {
+        double seconds = Double.parseDouble(options.get("duration"));
+        out.printf("%n%s req/s target, %s arrivals, %s s measured after %s s warmup, at most %d requests in flight%n",
+                options.get("rate"), options.get("arrival"), options.get("duration"), options.get("warmup"), maxInFlight);
+
+        Histogram allCorrected = new Histogram(LOWEST, HIGHEST, 3);
+        Histogram allUncorrected = new Histogram(LOWEST, HIGHEST, 3);
+        long allErrors = 0;
+        Map<Operation, Histogram[]> histograms = new EnumMap<>(Operation.class);
+        for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+            Histogram corrected = entry.getValue().corrected.getIntervalHistogram();
+            Histogram uncorrected = entry.getValue().uncorrected.getIntervalHistogram();
+            histograms.put(entry.getKey(), new Histogram[] {corrected, uncorrected});
+            allCorrected.add(corrected);
+            allUncorrected.add(uncorrected);
+            allErrors += entry.getValue().errors.sum();
+        }
+
+        // Under overload requests finish long after the window they were sent in.
+        double elapsed = (lastMeasuredDone.get() - measureFrom) / 1e9;
+        out.printf("Throughput: %.1f req/s completed, %d of them failed, in %.1f s%n",
+                allCorrected.getTotalCount() / elapsed, allErrors, elapsed);
+
+        out.println("\nLatency from intended start (coordinated omission corrected), ms");
+        printHeader(out);
+        for (Map.Entry<Operation, Histogram[]> entry : histograms.entrySet()) {
+            printRow(out, entry.getKey().name, entry.getValue()[0], stats.get(entry.getKey()).errors.sum(), seconds);
+        }
+        printRow(out, "all", allCorrected, allErrors, seconds);
+
+        out.println("\nLatency from actual send (service time only), ms");
+        printHeader(out);
+        for (Map.Entry<Operation, Histogram[]> entry : histograms.entrySet()) {
+            printRow(out, entry.getKey().name, entry.getValue()[1], stats.get(entry.getKey()).errors.sum(), seconds);
+        }
+        printRow(out, "all", allUncorrected, allErrors, seconds);
+    }
+
+    private static void printHeader(PrintStream out) {
+        out.printf("%-14s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "sent/s", "p50", "p90", "p99", "p99.9", "max");
+    }
+
+    private static void printRow(PrintStream out, String name, Histogram h, long errors, double seconds) {
+        out.printf("%-14s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, h.getTotalCount(), errors, h.getTotalCount() / seconds,
+                h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(90) / 1e6,
+                h.getValueAtPercentile(99) / 1e6, h.getValueAtPercentile(99.9) / 1e6, h.getMaxValue() / 1e6);
+    }
+
+    /**
+     * Latencies and errors of one operation, recorded from the HTTP client's threads.
+     */
+    private static class Stats {
+        final Recorder corrected = new Recorder(LOWEST, HIGHEST, 3);
+        final Recorder uncorrected = new Recorder(LOWEST, HIGHEST, 3);
+        final LongAdder errors = new LongAdder();
+
+        void record(long correctedNanos, long uncorrectedNanos, boolean ok) {
+            corrected.recordValue(Math.min(correctedNanos, HIGHEST));
+            uncorrected.recordValue(Math.min(uncorrectedNanos, HIGHEST));
+            if (!ok) {
+                errors.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountIndex;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * GET /messages/{message_id} is served from a cache, these tests check that writes keep it coherent.
+ */
+public class MessageCacheTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * A cached message is replaced by the updated one after PATCH.
+     */
+    @Test
+    public void getMessageAfterUpdate() throws IOException, InterruptedException {
+        Assert.assertEquals("test message 1", getMessage(1).getMessage_text());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792), getMessage(1));
+    }
+
+    /**
+     * A cached message is gone after DELETE.
+     */
+    @Test
+    public void getMessageAfterDelete() throws IOException, InterruptedException {
+        Assert.assertNotNull(getMessage(1));
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertNull(getMessage(1));
+    }
+
+    /**
+     * A cached miss is replaced once a message with that id is created.
+     */
+    @Test
+    public void getMessageAfterCreate() throws IOException, InterruptedException {
+        Assert.assertNull(getMessage(2));
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(new Message(2, 1, "hello message", 1669947792), getMessage(2));
+    }
+
+    /**
+     * An update that commits before a delete but finishes after it doesn't bring the deleted message back.
+     */
+    @Test
+    public void updateRacingDelete() throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MessageService service = new MessageService(stallAfterFirstUpdate(written, release),
+                new AccountIndex(new AccountDAO()));
+        try {
+            Assert.assertNotNull(service.getOneMessageById(1));
+            CompletableFuture<Message> update = CompletableFuture.supplyAsync(
+                    () -> service.updateMessage(new Message(1, 1, "updated message", 1669947792)));
+            written.await();
+
+            Assert.assertNotNull(service.deleteOneMessageById(1));
+            release.countDown();
+            Assert.assertNotNull(update.join());
+
+            Assert.assertNull(service.getOneMessageById(1));
+        } finally {
+            service.close();
+        }
+    }
+
+    /**
+     * Of two updates, the one the database kept is the one that is served, whichever finishes last.
+     */
+    @Test
+    public void updatesFinishingOutOfOrder() throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MessageService service = new MessageService(stallAfterFirstUpdate(written, release),
+                new AccountIndex(new AccountDAO()));
+        try {
+            Assert.assertNotNull(service.getOneMessageById(1));
+            CompletableFuture<Message> first = CompletableFuture.supplyAsync(
+                    () -> service.updateMessage(new Message(1, 1, "first update", 1669947792)));
+            written.await();
+
+            Assert.assertNotNull(service.updateMessage(new Message(1, 1, "second update", 1669947792)));
+            release.countDown();
+            Assert.assertNotNull(first.join());
+
+            Assert.assertEquals("second update", service.getOneMessageById(1).getMessage_text());
+        } finally {
+            service.close();
+        }
+    }
+
+    /**
+     * A feed page read before a delete, but cached after it, doesn't bring the deleted message back.
+     */
+    @Test
+    public void feedPageRacingDelete() throws InterruptedException {
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MessageService service = new MessageService(new MessageDAO() {
+            @Override
+            public List<Message> getFeedPage(int accountId, long beforeTime, int beforeId, int limit) {
+                List<Message> page = super.getFeedPage(accountId, beforeTime, beforeId, limit);
+                if (read.getCount() > 0) {
+                    read.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return page;
+            }
+        }, new AccountIndex(new AccountDAO()));
+        try {
+            CompletableFuture<List<Message>> page = CompletableFuture.supplyAsync(
+                    () -> service.getFeedPage(1, Long.MAX_VALUE, Integer.MAX_VALUE, 10));
+            read.await();
+
+            Assert.assertNotNull(service.deleteOneMessageById(1));
+            release.countDown();
+            page.join();
+
+            Assert.assertNull(service.getOneMessageById(1));
+        } finally {
+            service.close();
+        }
+    }
+
+    /**
+     * @return A DAO whose first update, once written, waits for release before returning.
+     */
+    private static MessageDAO stallAfterFirstUpdate(CountDownLatch written, CountDownLatch release) {
+        return new MessageDAO() {
+            @Override
+            public Message updateMessageById(Message m) {
+                Message updated = super.updateMessageById(m);
+                if (written.getCount() > 0) {
+                    written.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return updated;
+            }
+        };
+    }
+
+    /**
+     * @return The message, or null if the response body was empty.
+     */
+    private Message getMessage(int messageId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + messageId))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        if (response.body().isEmpty()) {
+            return null;
+        }
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageOwnershipTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    String token1;
+    String token2;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with socialmedia.auth.required, and create a
+     * new webClient and ObjectMapper for interacting locally on the web. testuser2 is registered, and both
+     * accounts log in.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("socialmedia.auth.required", "true");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        Assert.assertEquals(200, post("/register", null,
+                "{\"username\": \"testuser2\", \"password\": \"password\"}").statusCode());
+        token1 = login("testuser1");
+        token2 = login("testuser2");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.auth.required");
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/login
+     *
+     * Expected Response:
+     *  Status Code: 200, with a session token in the Authorization header
+     */
+    @Test
+    public void loginIssuesToken() {
+        Assert.assertTrue(token1.startsWith("Bearer "));
+        Assert.assertNotEquals(token1, token2);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages without a token, as someone else, and as the poster
+     *
+     * Expected Response:
+     *  Status Code: 401, 403, then 200
+     */
+    @Test
+    public void createNeedsOwnSession() throws IOException, InterruptedException {
+        String body = "{\"posted_by\":1, \"message_text\": \"hello\", \"time_posted_epoch\": 1669947800}";
+        Assert.assertEquals(401, post("/messages", null, body).statusCode());
+        Assert.assertEquals(403, post("/messages", token2, body).statusCode());
+        Assert.assertEquals(200, post("/messages", token1, body).statusCode());
+    }
+
+    /**
+     * Sending an http request to PATCH and DELETE localhost:8080/messages/1 without a token, as someone else,
+     * and as the poster
+     *
+     * Expected Response:
+     *  Status Code: 401, 403, then 200 and the message changes only for the poster
+     */
+    @Test
+    public void changesNeedOwnership() throws IOException, InterruptedException {
+        String body = "{\"message_text\": \"updated\"}";
+        Assert.assertEquals(401, send("PATCH", "/messages/1", null, body).statusCode());
+        Assert.assertEquals(403, send("PATCH", "/messages/1", token2, body).statusCode());
+        Assert.assertEquals(403, send("DELETE", "/messages/1", token2, null).statusCode());
+
+        HttpResponse<String> response = send("PATCH", "/messages/1", token1, body);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(1, 1, "updated", 1669947792L),
+                objectMapper.readValue(response.body(), Message.class));
+        Assert.assertEquals(200, send("DELETE", "/messages/1", token1, null).statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/logout, then using the token
+     *
+     * Expected Response:
+     *  Status Code: 200, then 401 for the ended session
+     */
+    @Test
+    public void logoutEndsSession() throws IOException, InterruptedException {
+        Assert.assertEquals(200, post("/logout", token1, "").statusCode());
+        Assert.assertEquals(401, post("/logout", token1, "").statusCode());
+        Assert.assertEquals(401, send("DELETE", "/messages/1", token1, null).statusCode());
+    }
+
+    private String login(String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = post("/login", null,
+                "{\"username\": \"" + username + "\", \"password\": \"password\"}");
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue("Authorization").orElse(null);
+    }
+
+    private HttpResponse<String> post(String path, String token, String body) throws IOException, InterruptedException {
+        return send("POST", path, token, body);
+    }
+
+    private HttpResponse<String> send(String method, String path, String token, String body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json");
+        if (token != null) {
+            request.header("Authorization", token);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import io.javalin.Javalin;
+
+/**
+ * GET /metrics reports latency per route and per query, in the Prometheus text format.
+ */
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * A request shows up under its route pattern and status, and its query under the DAO method.
+     */
+    @Test
+    public void requestAndQueryAreTimed() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/accounts/1/messages");
+        Assert.assertEquals(200, response.statusCode());
+
+        String metrics = get("/metrics").body();
+        Assert.assertTrue(metrics.contains("# TYPE http_server_requests_seconds summary"));
+        Assert.assertTrue(metrics.contains(
+                "http_server_requests_seconds_count{method=\"GET\",route=\"/accounts/{account_id}/messages\",status=\"200\"}"));
+        Assert.assertTrue(metrics.contains(
+                "db_query_seconds_count{query=\"MessageDAO.getAllMessagesFromAccountId\"}"));
+        Assert.assertTrue(metrics.contains("jvm_memory_used_bytes{area=\"heap\"}"));
+    }
+
+    /**
+     * Quantiles come from the recorded durations.
+     */
+    @Test
+    public void timerReportsQuantiles() {
+        Metrics.Timer timer = Metrics.timer("metrics_test_seconds", "case", "quantiles");
+        for (int i = 1; i <= 100; i++) {
+            timer.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        StringBuilder sb = new StringBuilder();
+        Metrics.writeTimers(sb);
+        String metrics = sb.toString();
+        Assert.assertTrue(metrics.contains("metrics_test_seconds_count{case=\"quantiles\"} 100\n"));
+        Assert.assertTrue(metrics.contains("metrics_test_seconds_sum{case=\"quantiles\"} 5.05\n"));
+
+        String p50 = "metrics_test_seconds{case=\"quantiles\",quantile=\"0.5\"} ";
+        int at = metrics.indexOf(p50) + p50.length();
+        double seconds = Double.parseDouble(metrics.substring(at, metrics.indexOf('\n', at)));
+        Assert.assertEquals(0.050, seconds, 0.001);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,36 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.PasswordHasher;
+
+public class PasswordHasherTest {
+    PasswordHasher hasher = new PasswordHasher(1000);
+
+    /**
+     * A hash verifies its own password only, and hashing the same password twice gives different salts.
+     */
+    @Test
+    public void hashVerifiesItsPassword() {
+        String hash = hasher.hash("password");
+        Assert.assertTrue(hash.startsWith("pbkdf2-sha256$1000$"));
+        Assert.assertNotEquals(hash, hasher.hash("password"));
+        Assert.assertTrue(hasher.verify("password", hash));
+        Assert.assertFalse(hasher.verify("passwore", hash));
+        Assert.assertFalse(hasher.needsRehash(hash));
+    }
+
+    /**
+     * Plaintext passwords and hashes with another work factor still verify, and are due for a rehash.
+     */
+    @Test
+    public void oldPasswordsNeedRehash() {
+        Assert.assertTrue(hasher.verify("password", "password"));
+        Assert.assertFalse(hasher.verify("pass", "password"));
+        Assert.assertTrue(hasher.needsRehash("password"));
+
+        String older = new PasswordHasher(500).hash("password");
+        Assert.assertTrue(hasher.verify("password", older));
+        Assert.assertTrue(hasher.needsRehash(older));
+        Assert.assertFalse(hasher.verify("password", "pbkdf2-sha256$500$broken"));
+    }
+}
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PasswordStorageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. testuser1's password is stored in plaintext, as before hashing.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/register, then POST localhost:8080/login
+     *
+     * Expected Response:
+     *  Status Code: 200 for both, with the password as it was sent
+     *  Database: Only a hash of the password is stored
+     */
+    @Test
+    public void registeredPasswordIsHashed() throws IOException, InterruptedException, SQLException {
+        HttpResponse<String> response = post("/register", "user", "secret password");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Account(2, "user", "secret password"),
+                objectMapper.readValue(response.body(), Account.class));
+
+        String stored = storedPassword("user");
+        Assert.assertTrue(stored.startsWith("pbkdf2-sha256$"));
+        Assert.assertFalse(stored.contains("secret password"));
+
+        response = post("/login", "user", "secret password");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Account(2, "user", "secret password"),
+                objectMapper.readValue(response.body(), Account.class));
+        Assert.assertEquals(401, post("/login", "user", "secret passwore").statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/login for an account with a plaintext password
+     *
+     * Expected Response:
+     *  Status Code: 200, and later logins keep working
+     *  Database: The plaintext password was replaced by a hash
+     */
+    @Test
+    public void plaintextPasswordIsRehashedOnLogin() throws IOException, InterruptedException, SQLException {
+        Assert.assertEquals("password", storedPassword("testuser1"));
+        Assert.assertEquals(401, post("/login", "testuser1", "wrong").statusCode());
+        Assert.assertEquals("password", storedPassword("testuser1"));
+
+        Assert.assertEquals(200, post("/login", "testuser1", "password").statusCode());
+        Assert.assertTrue(storedPassword("testuser1").startsWith("pbkdf2-sha256$"));
+        Assert.assertEquals(200, post("/login", "testuser1", "password").statusCode());
+        Assert.assertEquals(401, post("/login", "testuser1", "wrong").statusCode());
+    }
+
+    private String storedPassword(String username) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement ps = connection.prepareStatement("SELECT password FROM account WHERE username = ?")) {
+            ps.setString(1, username);
+            try (ResultSet rs = ps.executeQuery()) {
+                Assert.assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private HttpResponse<String> post(String path, String username, String password)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"" + password + "\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
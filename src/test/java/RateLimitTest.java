@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and restart the Javalin app with rate limits on. Logins may come
+     * two at once, then one every 100 seconds, and messages three at once.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("socialmedia.rateLimit.enabled", "true");
+        System.setProperty("socialmedia.rateLimit.login.perSecond", "0.01");
+        System.setProperty("socialmedia.rateLimit.login.burst", "2");
+        System.setProperty("socialmedia.rateLimit.messages.perSecond", "0.01");
+        System.setProperty("socialmedia.rateLimit.messages.burst", "3");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.rateLimit.enabled");
+        System.clearProperty("socialmedia.rateLimit.login.perSecond");
+        System.clearProperty("socialmedia.rateLimit.login.burst");
+        System.clearProperty("socialmedia.rateLimit.messages.perSecond");
+        System.clearProperty("socialmedia.rateLimit.messages.burst");
+    }
+
+    /**
+     * Sending three http requests to POST localhost:8080/login, then one to POST localhost:8080/register
+     *
+     * Expected Response:
+     *  Status Code: 401 twice, then 429 with Retry-After, other routes have their own limit
+     */
+    @Test
+    public void loginIsLimited() throws IOException, InterruptedException {
+        Assert.assertEquals(401, post("/login").statusCode());
+        Assert.assertEquals(401, post("/login").statusCode());
+
+        HttpResponse<String> response = post("/login");
+        Assert.assertEquals(429, response.statusCode());
+        long retryAfter = Long.parseLong(response.headers().firstValue("Retry-After").orElse("0"));
+        Assert.assertTrue(retryAfter > 90 && retryAfter <= 100);
+
+        Assert.assertEquals(200, post("/register").statusCode());
+    }
+
+    /**
+     * Sending http requests to POST localhost:8080/messages/batch and POST localhost:8080/messages
+     *
+     * Expected Response:
+     *  A batch takes one token per message from the same buckets as single messages
+     */
+    @Test
+    public void batchIsChargedPerMessage() throws IOException, InterruptedException {
+        String message = "{\"posted_by\":1, \"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}";
+        Assert.assertEquals(200, post("/messages/batch", "[" + message + "," + message + "]").statusCode());
+        Assert.assertEquals(429, post("/messages/batch", "[" + message + "," + message + "]").statusCode());
+        Assert.assertEquals(200, post("/messages", message).statusCode());
+        Assert.assertEquals(429, post("/messages", message).statusCode());
+    }
+
+    private HttpResponse<String> post(String path) throws IOException, InterruptedException {
+        return post(path, "{" +
+                "\"username\": \"user\", " +
+                "\"password\": \"password\" }");
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,99 @@
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.RateLimiter;
+
+public class RateLimiterTest {
+    static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    long now;
+    RateLimiter limiter;
+
+    /**
+     * Before every test, buckets hold 3 tokens and gain 1 a second on a clock the test moves by hand.
+     */
+    @Before
+    public void setUp() {
+        now = 1_000 * SECOND;
+        limiter = new RateLimiter(1, 3, 100, () -> now);
+    }
+
+    /**
+     * A key gets its burst at once, then one request per second, and other keys are not affected.
+     */
+    @Test
+    public void burstThenRate() {
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(0, limiter.acquire("a"));
+        }
+        Assert.assertEquals(SECOND, limiter.acquire("a"));
+        Assert.assertEquals(0, limiter.acquire("b"));
+
+        now += SECOND / 2;
+        Assert.assertEquals(SECOND / 2, limiter.acquire("a"));
+        now += SECOND / 2;
+        Assert.assertEquals(0, limiter.acquire("a"));
+        Assert.assertEquals(SECOND, limiter.acquire("a"));
+    }
+
+    /**
+     * An idle bucket refills up to the burst, not beyond.
+     */
+    @Test
+    public void refillsUpToBurst() {
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire("a");
+        }
+        now += 60 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(0, limiter.acquire("a"));
+        }
+        Assert.assertTrue(limiter.acquire("a") > 0);
+    }
+
+    /**
+     * Several tokens are taken all or none, and a request larger than the burst needs a full bucket and leaves
+     * it in debt.
+     */
+    @Test
+    public void severalPermits() {
+        Assert.assertEquals(0, limiter.acquire("a", 2));
+        Assert.assertEquals(SECOND, limiter.acquire("a", 2));
+        Assert.assertEquals(0, limiter.acquire("a", 1));
+
+        Assert.assertEquals(0, limiter.acquire("b", 10));
+        // 7 tokens owed, then one more is needed.
+        Assert.assertEquals(8 * SECOND, limiter.acquire("b"));
+        now += 8 * SECOND;
+        Assert.assertEquals(0, limiter.acquire("b"));
+    }
+
+    /**
+     * Beyond maxKeys new keys share one bucket, until buckets that are full again have been swept out.
+     */
+    @Test
+    public void boundedKeys() {
+        limiter = new RateLimiter(1, 1, 2, () -> now);
+        Assert.assertEquals(0, limiter.acquire("a"));
+        Assert.assertEquals(0, limiter.acquire("b"));
+        Assert.assertEquals(0, limiter.acquire("c"));
+        Assert.assertTrue(limiter.acquire("d") > 0);
+        Assert.assertEquals(2, limiter.size());
+
+        now += 2 * SECOND;
+        Assert.assertEquals(0, limiter.acquire("d"));
+        Assert.assertEquals(1, limiter.size());
+    }
+
+    /**
+     * Retry-After rounds the wait up to whole seconds.
+     */
+    @Test
+    public void retryAfterRoundsUp() {
+        Assert.assertEquals(1, new RateLimiter.LimitedException(1).getRetryAfterSeconds());
+        Assert.assertEquals(2, new RateLimiter.LimitedException(SECOND + 1).getRetryAfterSeconds());
+    }
+}
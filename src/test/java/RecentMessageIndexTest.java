@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Model.Message;
+import Service.RecentMessageIndex;
+
+public class RecentMessageIndexTest {
+    static final long FIRST = Long.MAX_VALUE;
+    static final int FIRST_ID = Integer.MAX_VALUE;
+
+    List<Message> stored;
+    int loads;
+    RecentMessageIndex index;
+
+    /**
+     * Before every test, account 1 has messages 1 to 5 posted at times 10 to 50, and the index keeps 4 per account.
+     */
+    @Before
+    public void setUp() {
+        stored = new ArrayList<>();
+        for (int i = 5; i >= 1; i--) {
+            stored.add(new Message(i, 1, "message " + i, i * 10L));
+        }
+        loads = 0;
+        index = new RecentMessageIndex(4, 1000, accountId -> {
+            loads++;
+            return accountId == 1 ? stored.subList(0, 4) : List.of();
+        });
+    }
+
+    /**
+     * Nothing is answered before the account is loaded, then pages come from memory until they reach
+     * messages that weren't kept.
+     */
+    @Test
+    public void pagesReachBackToTheOldestKept() {
+        Assert.assertNull(index.page(1, FIRST, FIRST_ID, 2));
+        index.load(1);
+        index.load(1);
+        Assert.assertEquals(1, loads);
+
+        Assert.assertArrayEquals(new int[] {5, 4}, index.page(1, FIRST, FIRST_ID, 2));
+        Assert.assertArrayEquals(new int[] {3, 2}, index.page(1, 40, 4, 2));
+        // Message 1 was not kept, the page must come from the database.
+        Assert.assertNull(index.page(1, 30, 3, 2));
+    }
+
+    /**
+     * An account with fewer messages than the depth has all of them, so short pages are answered too.
+     */
+    @Test
+    public void completeAccountAnswersShortPages() {
+        index.load(2);
+        Assert.assertArrayEquals(new int[0], index.page(2, FIRST, FIRST_ID, 10));
+
+        index.add(new Message(7, 2, "new", 70L));
+        index.add(new Message(6, 2, "older but posted later", 5L));
+        Assert.assertArrayEquals(new int[] {7, 6}, index.page(2, FIRST, FIRST_ID, 10));
+
+        index.remove(new Message(7, 2, "new", 70L));
+        Assert.assertArrayEquals(new int[] {6}, index.page(2, FIRST, FIRST_ID, 10));
+    }
+
+    /**
+     * New messages push out the oldest, out of order messages go in their place, and messages older than
+     * everything kept are left to the database.
+     */
+    @Test
+    public void addKeepsNewestInOrder() {
+        index.load(1);
+        index.add(new Message(6, 1, "newest", 60L));
+        Assert.assertArrayEquals(new int[] {6, 5, 4, 3}, index.page(1, FIRST, FIRST_ID, 4));
+
+        index.add(new Message(7, 1, "between", 45L));
+        Assert.assertArrayEquals(new int[] {6, 5, 7, 4}, index.page(1, FIRST, FIRST_ID, 4));
+
+        index.add(new Message(8, 1, "too old", 1L));
+        index.add(new Message(6, 1, "newest", 60L));
+        Assert.assertArrayEquals(new int[] {6, 5, 7, 4}, index.page(1, FIRST, FIRST_ID, 4));
+        Assert.assertNull(index.page(1, FIRST, FIRST_ID, 5));
+
+        // Accounts that were never read aren't tracked.
+        index.add(new Message(9, 3, "untracked", 90L));
+        Assert.assertNull(index.page(3, FIRST, FIRST_ID, 1));
+    }
+
+    /**
+     * A message deleted while the account's load query runs is left out of the loaded result.
+     */
+    @Test
+    public void deleteRacingLoad() throws InterruptedException {
+        CountDownLatch querying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        index = new RecentMessageIndex(4, 1000, accountId -> {
+            List<Message> newest = List.copyOf(stored.subList(0, 4));
+            querying.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return newest;
+        });
+        CompletableFuture<Void> load = CompletableFuture.runAsync(() -> index.load(1));
+        querying.await();
+
+        index.remove(new Message(5, 1, "message 5", 50L));
+        Assert.assertNull(index.page(1, FIRST, FIRST_ID, 2));
+        release.countDown();
+        load.join();
+
+        Assert.assertArrayEquals(new int[] {4, 3, 2}, index.page(1, FIRST, FIRST_ID, 3));
+    }
+}
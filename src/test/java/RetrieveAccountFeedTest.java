@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveAccountFeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Three more messages are posted by account 1, so newest first the feed is
+     * message 4 and 2 (same time, higher id first), then 1, then 3.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        postMessage("test message 2", 1669947800L);
+        postMessage("test message 3", 1669947790L);
+        postMessage("test message 4", 1669947800L);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/feed?limit=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: The two newest messages, with a Link header to the next page
+     */
+    @Test
+    public void getFirstFeedPage() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/accounts/1/feed?limit=2");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, messages.size());
+        Assert.assertEquals(new Message(4, 1, "test message 4", 1669947800L), messages.get(0));
+        Assert.assertEquals(new Message(2, 1, "test message 2", 1669947800L), messages.get(1));
+        Assert.assertEquals("</accounts/1/feed?before=1669947800:2&limit=2>; rel=\"next\"",
+                response.headers().firstValue("Link").orElse(null));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/feed?before=1669947800:2&limit=3
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: The older messages after the cursor, with no Link header
+     */
+    @Test
+    public void getNextFeedPage() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/accounts/1/feed?before=1669947800:2&limit=3");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, messages.size());
+        Assert.assertEquals(1, messages.get(0).getMessage_id());
+        Assert.assertEquals(3, messages.get(1).getMessage_id());
+        Assert.assertFalse(response.headers().firstValue("Link").isPresent());
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/messages/4 after the feed was read, then
+     * GET localhost:8080/accounts/1/feed?limit=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: The deleted message is gone, the next newest take its place
+     */
+    @Test
+    public void deletedMessageLeavesFeed() throws IOException, InterruptedException {
+        Assert.assertEquals(200, get("http://localhost:8080/accounts/1/feed?limit=2").statusCode());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/4"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = get("http://localhost:8080/accounts/1/feed?limit=2");
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, messages.size());
+        Assert.assertEquals(2, messages.get(0).getMessage_id());
+        Assert.assertEquals(1, messages.get(1).getMessage_id());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/feed?before=abc
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getFeedInvalidCursor() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/accounts/1/feed?before=abc");
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void postMessage(String text, long time) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": " + time + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Two more messages are posted so there are three in total.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        postMessage("test message 2");
+        postMessage("test message 3");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: The first two messages, with a Link header to the next page
+     */
+    @Test
+    public void getFirstPage() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?limit=2");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, messages.size());
+        Assert.assertEquals(1, messages.get(0).getMessage_id());
+        Assert.assertEquals(2, messages.get(1).getMessage_id());
+        Assert.assertEquals("</messages?after=2&limit=2>; rel=\"next\"",
+                response.headers().firstValue("Link").orElse(null));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?after=2&limit=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Only the last message, with no Link header
+     */
+    @Test
+    public void getLastPage() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?after=2&limit=2");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(1, messages.size());
+        Assert.assertEquals(new Message(3, 1, "test message 3", 1669947792), messages.get(0));
+        Assert.assertFalse(response.headers().firstValue("Link").isPresent());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages without paging parameters streams every message.
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: All three messages in message_id order
+     */
+    @Test
+    public void getAllMessagesStreamed() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(3, messages.size());
+        Assert.assertEquals(3, messages.get(2).getMessage_id());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=abc
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getPageInvalidLimit() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?limit=abc");
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
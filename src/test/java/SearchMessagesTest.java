@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.SearchIndex;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Messages 2, 3 and 4 are posted next to "test message 1".
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        postMessage("Coffee and code");
+        postMessage("coffee, coffee! Morning");
+        postMessage("morning run");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=morning%20coffee
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Messages with either word, the one with both first, then the shorter of the others
+     */
+    @Test
+    public void searchRanksMatches() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(3, 4, 2), searchIds("/messages/search?q=morning%20coffee"));
+        Assert.assertEquals(List.of(3, 2), searchIds("/messages/search?q=COFFEE"));
+        Assert.assertEquals(List.of(), searchIds("/messages/search?q=tea"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=coffee&limit=1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: The best match, with a Link header to the next one
+     */
+    @Test
+    public void searchIsPaged() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages/search?q=coffee&limit=1");
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(3, 1, "coffee, coffee! Morning", 1669947800L)), messages);
+        Assert.assertEquals("</messages/search?q=coffee&offset=1&limit=1>; rel=\"next\"",
+                response.headers().firstValue("Link").orElse(null));
+
+        Assert.assertEquals(List.of(2), searchIds("/messages/search?q=coffee&offset=1&limit=1"));
+    }
+
+    /**
+     * Posting a message, sending an http request to PATCH localhost:8080/messages/3 and to
+     * DELETE localhost:8080/messages/2 after a search
+     *
+     * Expected Response:
+     *  Response Body: Searches find the new message, see the new text and no longer find the deleted message
+     */
+    @Test
+    public void searchFollowsUpdatesAndDeletes() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(3, 2), searchIds("/messages/search?q=coffee"));
+
+        postMessage("iced coffee");
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"tea time\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(List.of(5), searchIds("/messages/search?q=coffee"));
+        Assert.assertEquals(List.of(3), searchIds("/messages/search?q=tea"));
+    }
+
+    /**
+     * A build that fails part way leaves nothing behind, the search fails and the next one builds the index again.
+     */
+    @Test
+    public void failedBuildIsRetried() {
+        boolean[] failed = {false};
+        SearchIndex index = new SearchIndex(new MessageDAO() {
+            @Override
+            public void forEachMessage(MessageConsumer consumer) throws IOException {
+                if (!failed[0]) {
+                    failed[0] = true;
+                    consumer.accept(new Message(1, 1, "test message 1", 1669947792L));
+                    throw new IOException("connection lost");
+                }
+                super.forEachMessage(consumer);
+            }
+        });
+
+        Assert.assertThrows(UncheckedIOException.class, () -> index.search("test", 0, 10));
+        Assert.assertEquals(0, index.size());
+        index.index(new Message(2, 1, "test message 2", 1669947793L));
+        Assert.assertEquals(0, index.size());
+
+        Assert.assertArrayEquals(new int[]{1}, index.search("test", 0, 10));
+        Assert.assertEquals(new MessageDAO().getAllMessages().size(), index.size());
+    }
+
+    /**
+     * A refresh that arrives late indexes what the database has now, not the text of the update that sent it.
+     */
+    @Test
+    public void lateRefreshIndexesCurrentText() {
+        MessageDAO messageDAO = new MessageDAO();
+        SearchIndex index = new SearchIndex(messageDAO);
+        index.search("test", 0, 10);
+
+        // Two updates commit, the second one's refresh is applied first.
+        messageDAO.updateMessageById(new Message(1, 1, "first update", 1669947792L));
+        messageDAO.updateMessageById(new Message(1, 1, "second update", 1669947792L));
+        index.refresh(1);
+        index.refresh(1);
+        Assert.assertArrayEquals(new int[]{1}, index.search("second", 0, 10));
+        Assert.assertArrayEquals(new int[0], index.search("first", 0, 10));
+
+        // An update's refresh that arrives after the delete doesn't index the message again.
+        messageDAO.deleteMessageById(1);
+        index.remove(1);
+        index.refresh(1);
+        Assert.assertArrayEquals(new int[0], index.search("second update", 0, 10));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search without q, and with a blank q
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchWithoutQuery() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages/search").statusCode());
+        Assert.assertEquals(400, get("/messages/search?q=%20").statusCode());
+    }
+
+    private List<Integer> searchIds(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = get(path);
+        Assert.assertEquals(200, response.statusCode());
+        List<Integer> ids = new ArrayList<>();
+        for (Message m : objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){})) {
+            ids.add(m.getMessage_id());
+        }
+        return ids;
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
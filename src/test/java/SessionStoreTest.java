@@ -0,0 +1,63 @@
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Service.SessionStore;
+
+public class SessionStoreTest {
+    long now;
+    SessionStore sessions;
+
+    /**
+     * Before every test, sessions last 10 seconds on a clock the test moves by hand.
+     */
+    @Before
+    public void setUp() {
+        now = 1_000_000;
+        sessions = new SessionStore("secret".getBytes(StandardCharsets.UTF_8), 10_000, () -> now);
+    }
+
+    /**
+     * A token identifies its account until it is ended, edited tokens and other secrets' tokens don't.
+     */
+    @Test
+    public void tokensIdentifyTheirAccount() {
+        String token = sessions.create(7);
+        Assert.assertEquals(Integer.valueOf(7), sessions.authenticate(token));
+
+        Assert.assertNull(sessions.authenticate(null));
+        Assert.assertNull(sessions.authenticate("garbage"));
+        Assert.assertNull(sessions.authenticate("8" + token.substring(1)));
+        SessionStore other = new SessionStore("other".getBytes(StandardCharsets.UTF_8), 10_000, () -> now);
+        Assert.assertNull(other.authenticate(token));
+
+        Assert.assertTrue(sessions.end(token));
+        Assert.assertNull(sessions.authenticate(token));
+        Assert.assertFalse(sessions.end(token));
+        Assert.assertEquals(0, sessions.size());
+    }
+
+    /**
+     * A session stops working at its expiry, and the timer wheel drops it from memory on the next tick.
+     */
+    @Test
+    public void sessionsExpire() {
+        String first = sessions.create(1);
+        now += 5_000;
+        String second = sessions.create(2);
+        Assert.assertEquals(2, sessions.size());
+
+        now += 5_000;
+        Assert.assertNull(sessions.authenticate(first));
+        Assert.assertEquals(Integer.valueOf(2), sessions.authenticate(second));
+        Assert.assertEquals(1, sessions.tick());
+        Assert.assertEquals(1, sessions.size());
+
+        // Long after a full turn of the wheel.
+        now += 10_000_000;
+        Assert.assertEquals(1, sessions.tick());
+        Assert.assertEquals(0, sessions.size());
+    }
+}
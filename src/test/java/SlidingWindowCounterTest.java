@@ -0,0 +1,89 @@
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.SlidingWindowCounter;
+
+public class SlidingWindowCounterTest {
+    long now;
+    SlidingWindowCounter counter;
+
+    /**
+     * Before every test, the window is 3 buckets of 10 ms on a clock the test moves by hand, for up to 100 keys.
+     */
+    @Before
+    public void setUp() {
+        now = 1000;
+        counter = new SlidingWindowCounter(3, 10, 100, () -> now);
+    }
+
+    /**
+     * Events are counted until their bucket falls out of the window.
+     */
+    @Test
+    public void eventsLeaveTheWindow() {
+        counter.increment("a");
+        now += 10;
+        counter.increment("a");
+        counter.increment("a");
+        Assert.assertEquals(3, counter.count("a"));
+
+        now += 20;
+        Assert.assertEquals(2, counter.count("a"));
+        now += 10;
+        Assert.assertEquals(0, counter.count("a"));
+        Assert.assertEquals(0, counter.count("b"));
+    }
+
+    /**
+     * The top keys come most counted first, ties by key, and keys with nothing left in the window are dropped.
+     */
+    @Test
+    public void topKeys() {
+        counter.increment("old");
+        now += 10;
+        counter.increment("b");
+        counter.increment("a");
+        counter.increment("c");
+        counter.increment("c");
+
+        Assert.assertEquals(List.of(Map.entry("c", 2L), Map.entry("a", 1L)), counter.top(2));
+
+        now += 20;
+        Assert.assertEquals(List.of(Map.entry("c", 2L), Map.entry("a", 1L), Map.entry("b", 1L)), counter.top(10));
+        // The retired key counts again from 0.
+        counter.increment("old");
+        Assert.assertEquals(1, counter.count("old"));
+    }
+
+    /**
+     * A full table makes room for a new key by dropping the least counted key, keeps the busy ones, and
+     * doesn't count further new keys until the next sweep, which drops the keys that left the window.
+     */
+    @Test
+    public void boundedKeys() {
+        counter = new SlidingWindowCounter(3, 10, 3, () -> now);
+        counter.increment("a");
+        counter.increment("a");
+        counter.increment("b");
+        counter.increment("c");
+
+        counter.increment("d");
+        Assert.assertEquals(3, counter.size());
+        Assert.assertEquals(0, counter.count("b"));
+        Assert.assertEquals(List.of(Map.entry("a", 2L), Map.entry("c", 1L), Map.entry("d", 1L)), counter.top(10));
+
+        // Full again, and the last sweep was less than a second ago.
+        counter.increment("e");
+        Assert.assertEquals(0, counter.count("e"));
+        Assert.assertEquals(3, counter.size());
+
+        now += 1000;
+        counter.increment("e");
+        Assert.assertEquals(1, counter.count("e"));
+        Assert.assertEquals(1, counter.size());
+    }
+}
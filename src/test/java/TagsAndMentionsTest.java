@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.TagDAO;
+import Model.Message;
+import Model.TagCount;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TagsAndMentionsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Messages 2, 3 and 4 are posted next to "test message 1".
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        postMessage("#Coffee with @testuser1", 1669947800L);
+        postMessage("more #coffee #tea, #coffee", 1669947810L);
+        postMessage("#tea for @nobody", 1669947790L);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/tags/coffee/messages?limit=1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: The newest message with the tag in any case, with a Link header to the next page
+     */
+    @Test
+    public void getTagPages() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/tags/coffee/messages?limit=1");
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(3, 1, "more #coffee #tea, #coffee", 1669947810L)), messages);
+        Assert.assertEquals("</tags/coffee/messages?before=1669947810:3&limit=1>; rel=\"next\"",
+                response.headers().firstValue("Link").orElse(null));
+
+        Assert.assertEquals(List.of(2), pageIds("/tags/COFFEE/messages?before=1669947810:3&limit=1"));
+        Assert.assertEquals(List.of(3, 4), pageIds("/tags/tea/messages"));
+        Assert.assertEquals(List.of(), pageIds("/tags/milk/messages"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/mentions
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: The message that mentions testuser1, mentions of unknown accounts are ignored
+     */
+    @Test
+    public void getMentions() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(2), pageIds("/accounts/1/mentions"));
+        Assert.assertEquals(List.of(), pageIds("/accounts/2/mentions"));
+        Assert.assertEquals(400, get("/accounts/1/mentions?before=abc").statusCode());
+    }
+
+    /**
+     * Sending an http request to PATCH localhost:8080/messages/2 and to DELETE localhost:8080/messages/3
+     *
+     * Expected Response:
+     *  Response Body: Tag and mention pages follow the new text and no longer list the deleted message
+     */
+    @Test
+    public void tagsFollowUpdatesAndDeletes() throws IOException, InterruptedException {
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"#tea now\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(List.of(), pageIds("/tags/coffee/messages"));
+        Assert.assertEquals(List.of(2, 4), pageIds("/tags/tea/messages"));
+        Assert.assertEquals(List.of(), pageIds("/accounts/1/mentions"));
+    }
+
+    /**
+     * Saving the tags of a batch skips the messages that were deleted or updated again since, and saves the rest.
+     */
+    @Test
+    public void staleMessagesAreSkipped() throws IOException, InterruptedException {
+        List<Message> messages = List.of(
+                new Message(1, 1, "#stale text", 1669947792L),
+                new Message(999, 1, "#gone", 1669947792L),
+                new Message(2, 1, "#Coffee with @testuser1", 1669947800L));
+        Assert.assertTrue(new TagDAO().saveTagsAndMentions(messages,
+                List.of(List.of("stale"), List.of("gone"), List.of("coffee", "breakfast")),
+                List.of(List.of(), List.of(), List.of(1)), true));
+
+        Assert.assertEquals(List.of(2), pageIds("/tags/breakfast/messages"));
+        Assert.assertEquals(List.of(), pageIds("/tags/stale/messages"));
+        Assert.assertEquals(List.of(), pageIds("/tags/gone/messages"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/tags/trending
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Tags by number of messages that used them, ties by tag
+     */
+    @Test
+    public void getTrendingTags() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/tags/trending");
+        Assert.assertEquals(200, response.statusCode());
+        List<TagCount> trending = objectMapper.readValue(response.body(), new TypeReference<List<TagCount>>(){});
+        Assert.assertEquals(2, trending.size());
+        Assert.assertEquals("coffee", trending.get(0).getTag());
+        Assert.assertEquals(2, trending.get(0).getCount());
+        Assert.assertEquals("tea", trending.get(1).getTag());
+        Assert.assertEquals(2, trending.get(1).getCount());
+
+        trending = objectMapper.readValue(get("/tags/trending?limit=1").body(), new TypeReference<List<TagCount>>(){});
+        Assert.assertEquals(1, trending.size());
+        Assert.assertEquals(400, get("/tags/trending?limit=0").statusCode());
+    }
+
+    private List<Integer> pageIds(String path) throws IOException, InterruptedException {
+        HttpResponse<String> response = get(path);
+        Assert.assertEquals(200, response.statusCode());
+        List<Integer> ids = new ArrayList<>();
+        for (Message m : objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){})) {
+            ids.add(m.getMessage_id());
+        }
+        return ids;
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void postMessage(String text, long time) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": " + time + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
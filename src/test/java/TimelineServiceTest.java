@@ -0,0 +1,83 @@
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import DAO.TimelineDAO;
+import Model.Account;
+import Model.Message;
+import Service.AccountIndex;
+import Service.MessageService;
+import Service.TimelineService;
+import Util.ConnectionUtil;
+import Util.DbExecutor;
+
+public class TimelineServiceTest {
+    TimelineDAO timelineDAO;
+    TimelineService timelineService;
+    MessageService messageService;
+
+    /**
+     * Before every test, reset the database and create accounts 2 and 3. Accounts with more than one follower
+     * are fanned out on read.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        AccountIndex accounts = new AccountIndex(new AccountDAO());
+        accounts.insert(new Account("testuser2", "password"));
+        accounts.insert(new Account("testuser3", "password"));
+
+        timelineDAO = new TimelineDAO();
+        MessageDAO messageDAO = new MessageDAO();
+        timelineService = new TimelineService(new FollowDAO(), timelineDAO, messageDAO, accounts,
+                DbExecutor.getShared(), 1, 200);
+        messageService = new MessageService(messageDAO, accounts, DbExecutor.getShared(), timelineService);
+    }
+
+    /**
+     * Once account 1 has two followers its new messages are no longer copied, but still show up on their
+     * home timelines, merged with the copied messages in order and without duplicates.
+     */
+    @Test
+    public void popularAccountIsMergedOnRead() {
+        Message before = messageService.createMessage(new Message(2, "from 2", 1669947793L));
+        Assert.assertTrue(timelineService.follow(3, 2));
+        Assert.assertTrue(timelineService.follow(2, 1));
+        Assert.assertEquals(0, timelineService.getFanOutOnReadCount());
+        Assert.assertTrue(timelineService.follow(3, 1));
+        Assert.assertEquals(1, timelineService.getFanOutOnReadCount());
+
+        Message popular = messageService.createMessage(new Message(1, "from 1", 1669947800L));
+        Message after = messageService.createMessage(new Message(2, "from 2 again", 1669947799L));
+        Message first = new Message(1, 1, "test message 1", 1669947792L);
+
+        // Copied: account 2's messages, and message 1 from the backfill when account 3 followed account 1.
+        Assert.assertEquals(List.of(after, before, first), timelineDAO.getHomePage(3, Long.MAX_VALUE, Integer.MAX_VALUE, 10));
+        Assert.assertEquals(List.of(popular, after, before, first),
+                timelineService.getHomePage(3, Long.MAX_VALUE, Integer.MAX_VALUE, 10));
+        Assert.assertEquals(List.of(popular, after), timelineService.getHomePage(3, Long.MAX_VALUE, Integer.MAX_VALUE, 2));
+        Assert.assertEquals(List.of(before, first), timelineService.getHomePage(3, 1669947799L, after.getMessage_id(), 2));
+        Assert.assertEquals(List.of(popular, first), timelineService.getHomePage(2, Long.MAX_VALUE, Integer.MAX_VALUE, 10));
+    }
+
+    /**
+     * A batch of messages is fanned out like single messages.
+     */
+    @Test
+    public void batchIsFannedOut() {
+        Assert.assertTrue(timelineService.follow(3, 2));
+        messageService.createMessages(List.of(
+                new Message(2, "batch 1", 1669947801L),
+                new Message(2, "batch 2", 1669947802L)));
+
+        List<Message> home = timelineService.getHomePage(3, Long.MAX_VALUE, Integer.MAX_VALUE, 10);
+        Assert.assertEquals(2, home.size());
+        Assert.assertEquals("batch 2", home.get(0).getMessage_text());
+        Assert.assertEquals("batch 1", home.get(1).getMessage_text());
+    }
+}